@@ -0,0 +1,71 @@
+package ai;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Forward pass, snapshot inference and a training step at the topologies of
+ * Game.init and TestNetwork.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NetworkBenchmark {
+	@Param({ "game", "test" })
+	String topology;
+
+	NeuralNetwork nn;
+	WeightSnapshot snapshot;
+	Inference.Workspace ws;
+	float[] inputs, expected, outputs;
+
+	@Setup
+	public void setup() {
+		int[] layers = topology.equals("game") ? new int[] { 18, 30, 30, 30, 10, 4 } : new int[] { 3, 25, 25, 1 };
+		nn = new NeuralNetwork(layers);
+		Random random = new Random(0);
+		inputs = new float[layers[0]];
+		expected = new float[layers[layers.length - 1]];
+		for (int i = 0; i < inputs.length; i++) {
+			inputs[i] = random.nextFloat() * 2 - 1;
+		}
+		for (int i = 0; i < expected.length; i++) {
+			expected[i] = random.nextFloat() * 2 - 1;
+		}
+		snapshot = new WeightSnapshot(nn, 0);
+		ws = snapshot.createWorkspace();
+		outputs = new float[expected.length];
+	}
+
+	@Benchmark
+	public float[] feedForward() {
+		return nn.feedForward(inputs);
+	}
+
+	@Benchmark
+	public float[] infer() {
+		return snapshot.infer(inputs, ws, outputs);
+	}
+
+	@Benchmark
+	public void backProp(Blackhole bh) {
+		bh.consume(nn.feedForward(inputs));
+		nn.backProp(expected);
+	}
+}
@@ -0,0 +1,56 @@
+package ai;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing and printing the text format on the real network files, relative
+ * to the game directory.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NetworkFileBenchmark {
+	@Param({ "res/networks/cars/NN13_CircleTrack", "res/networks/cars/NN1" })
+	String path;
+
+	String text;
+	NeuralNetwork nn;
+
+	@Setup
+	public void setup() throws IOException {
+		text = new String(Files.readAllBytes(new File(path).toPath()), StandardCharsets.UTF_8);
+		nn = new NeuralNetwork(new int[] { 1, 1 });
+		nn.parse(new BufferedReader(new StringReader(text)));
+	}
+
+	@Benchmark
+	public int parse() {
+		return nn.parse(new BufferedReader(new StringReader(text)));
+	}
+
+	@Benchmark
+	public String print() {
+		return nn.toString(0);
+	}
+}
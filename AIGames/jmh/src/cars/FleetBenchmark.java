@@ -0,0 +1,55 @@
+package cars;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ai.Activation;
+import ai.NeuralNetwork;
+import ai.WeightSnapshot;
+
+/**
+ * One tick of a fleet of cars sharing one space, driven by one network with
+ * the activation of cars.activation, e.g. -Pjmh="-jvmArgsAppend
+ * -Dcars.activation=FAST_TANH".
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FleetBenchmark {
+	@Param({ "64" })
+	int cars;
+
+	Fleet fleet;
+	WeightSnapshot[] weights;
+
+	@Setup
+	public void setup() {
+		fleet = new Fleet(TrackPool.getDefault(), 1, cars, false);
+		NeuralNetwork nn = new NeuralNetwork(new int[] { 18, 30, 30, 30, 10, 4 });
+		Activation activation = Simulation.activationFromProperties();
+		if (activation != null) {
+			nn.setActivation(activation);
+		}
+		weights = new WeightSnapshot[] { new WeightSnapshot(nn, 0) };
+	}
+
+	@Benchmark
+	public float tick() {
+		fleet.update(weights, Simulation.tickLength);
+		return fleet.getDistance(0);
+	}
+}
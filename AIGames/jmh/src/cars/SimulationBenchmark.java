@@ -0,0 +1,85 @@
+package cars;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The 10 ray sensor pass through the space and through the sensor grid,
+ * segment tracking and one whole headless mode 3 tick, on a car that drove a
+ * while so it isn't sitting at the start.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SimulationBenchmark {
+	Simulation sim;
+
+	@Setup
+	public void setup() {
+		sim = new Simulation(null, false);
+		sim.random = new Random(0);
+		sim.mode = 2;
+		for (int t = 0; t < 2000; t++) {
+			tick(sim);
+		}
+		sim.mode = 3;
+	}
+
+	@TearDown
+	public void tearDown() {
+		sim.close();
+	}
+
+	@Benchmark
+	public float doRaycastsSpace() {
+		sim.useSensorCaster = false;
+		sim.doRaycasts(sim.car);
+		return sim.raycastDistances[0];
+	}
+
+	@Benchmark
+	public float doRaycastsCaster() {
+		sim.useSensorCaster = true;
+		sim.doRaycasts(sim.car);
+		return sim.raycastDistances[0];
+	}
+
+	@Benchmark
+	public float updateSegment() {
+		sim.tracker.update(sim.car);
+		return sim.tracker.getProgress();
+	}
+
+	@Benchmark
+	public float trainingTick() {
+		tick(sim);
+		return sim.tracker.getProgress();
+	}
+
+	/**
+	 * One update, resuming in the same mode after a raycast error.
+	 */
+	static void tick(Simulation sim) {
+		int mode = sim.mode;
+		sim.update(Simulation.tickLength);
+		if (sim.errorstop) {
+			sim.errorstop = false;
+			sim.mode = mode;
+		}
+	}
+}
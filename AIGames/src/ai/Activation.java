@@ -0,0 +1,142 @@
+package ai;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Activation function of a layer. The derivative is expressed in terms of
+ * the activation output, which is what backprop has at hand. Every constant
+ * overrides the bulk apply, so the loop over a layer has a single target and
+ * gets inlined.
+ *
+ * The ordinal is stored in network files, new functions go at the end.
+ */
+public enum Activation {
+	/**
+	 * Math.tanh, the reference.
+	 */
+	TANH {
+		@Override
+		public float apply(float x) {
+			return (float) Math.tanh(x);
+		}
+
+		@Override
+		public void apply(float[] values, int offset, int length) {
+			for (int i = offset; i < offset + length; i++) {
+				values[i] = (float) Math.tanh(values[i]);
+			}
+		}
+
+		@Override
+		public float derivative(float output) {
+			return 1 - output * output;
+		}
+	},
+	/**
+	 * Rational tanh (7/6 Pade approximant of its continued fraction), clamped
+	 * to +-1 from 4.97 on. Off by at most 1e-4.
+	 */
+	FAST_TANH {
+		@Override
+		public float apply(float x) {
+			return fastTanh(x);
+		}
+
+		@Override
+		public void apply(float[] values, int offset, int length) {
+			for (int i = offset; i < offset + length; i++) {
+				values[i] = fastTanh(values[i]);
+			}
+		}
+
+		@Override
+		public float derivative(float output) {
+			return 1 - output * output;
+		}
+	},
+	/**
+	 * tanh cut to a straight line, -1 below -1 and 1 above 1.
+	 */
+	HARD_TANH {
+		@Override
+		public float apply(float x) {
+			return Math.max(-1, Math.min(1, x));
+		}
+
+		@Override
+		public void apply(float[] values, int offset, int length) {
+			for (int i = offset; i < offset + length; i++) {
+				values[i] = Math.max(-1, Math.min(1, values[i]));
+			}
+		}
+
+		@Override
+		public float derivative(float output) {
+			return output > -1 && output < 1 ? 1 : 0;
+		}
+	},
+	RELU {
+		@Override
+		public float apply(float x) {
+			return Math.max(0, x);
+		}
+
+		@Override
+		public void apply(float[] values, int offset, int length) {
+			for (int i = offset; i < offset + length; i++) {
+				values[i] = Math.max(0, values[i]);
+			}
+		}
+
+		@Override
+		public float derivative(float output) {
+			return output > 0 ? 1 : 0;
+		}
+
+		@Override
+		public boolean isBounded() {
+			return false;
+		}
+	};
+
+	final static float fastTanhClamp = 4.97f;
+
+	public abstract float apply(float x);
+
+	/**
+	 * Applies the function in place to length values from offset on.
+	 */
+	public abstract void apply(float[] values, int offset, int length);
+
+	public abstract float derivative(float output);
+
+	/**
+	 * Whether all outputs lie within [-1, 1].
+	 */
+	public boolean isBounded() {
+		return true;
+	}
+
+	static float fastTanh(float x) {
+		if (x > fastTanhClamp) {
+			return 1;
+		}
+		if (x < -fastTanhClamp) {
+			return -1;
+		}
+		float x2 = x * x;
+		return x * (135135f + x2 * (17325f + x2 * (378f + x2))) / (135135f + x2 * (62370f + x2 * (3150f + x2 * 28f)));
+	}
+
+	/**
+	 * The activation stored as id in file.
+	 */
+	static Activation read(int id, File file) throws IOException {
+		Activation[] all = values();
+		if (id < 0 || id >= all.length) {
+			throw new IOException("Unknown activation " + id + " in " + file);
+		}
+		return all[id];
+	}
+}
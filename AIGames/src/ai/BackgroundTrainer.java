@@ -0,0 +1,136 @@
+package ai;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Trains a copy of a network on mini-batches drawn from a ReplayBuffer on its
+ * own thread, so collecting samples and gradient work overlap. Every new
+ * sample allows a few batches, the thread sleeps when they are used up
+ * instead of spinning over the same data. The weights are published every
+ * few batches as an immutable snapshot, consumers pick them up with sync on
+ * their own thread without locking. Adding a sample never blocks the caller.
+ */
+public class BackgroundTrainer {
+	final ReplayBuffer buffer;
+	final NeuralNetwork master;
+	final WeightPublisher publisher;
+	final int publishInterval = 4;
+	final int batchSize;
+	final int batchesPerSample;
+	final int maxCredits;
+	final AtomicInteger credits = new AtomicInteger();
+	// Set while the trainer thread is about to park or parked
+	volatile boolean idle = false;
+	// Only the trainer thread writes, metrics read them from other threads
+	volatile long batches = 0;
+	volatile long batchNanos = 0;
+	volatile boolean running = false;
+	Thread thread;
+
+	public BackgroundTrainer(NeuralNetwork nn, ReplayBuffer buffer, int batchSize, int batchesPerSample) {
+		this.buffer = buffer;
+		this.batchSize = batchSize;
+		this.batchesPerSample = batchesPerSample;
+		maxCredits = batchesPerSample * 16;
+		master = new NeuralNetwork(nn);
+		publisher = new WeightPublisher(master);
+	}
+
+	public void start() {
+		running = true;
+		thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				trainLoop();
+			}
+		}, "BackgroundTrainer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public void stop() {
+		running = false;
+		LockSupport.unpark(thread);
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public void add(float[] inputs, float[] expected, float score) {
+		buffer.add(inputs, expected, score);
+		// Don't build up a backlog if training can't keep up
+		int c;
+		do {
+			c = credits.get();
+		} while (c < maxCredits && !credits.compareAndSet(c, Math.min(c + batchesPerSample, maxCredits)));
+		if (idle) {
+			LockSupport.unpark(thread);
+		}
+	}
+
+	/**
+	 * Copies the latest published weights into target if they are newer than
+	 * knownVersion. Returns the version target holds now.
+	 */
+	public long sync(NeuralNetwork target, long knownVersion) {
+		return publisher.sync(target, knownVersion);
+	}
+
+	public long getBatches() {
+		return batches;
+	}
+
+	/**
+	 * Time spent in feedForwardBatch and backPropBatch over all batches.
+	 */
+	public long getBatchNanos() {
+		return batchNanos;
+	}
+
+	public ReplayBuffer getBuffer() {
+		return buffer;
+	}
+
+	private void trainLoop() {
+		int[] topology = master.getTopology();
+		int nIn = topology[0];
+		int nOut = topology[topology.length - 1];
+		float[] batchInputs = new float[batchSize * nIn];
+		float[] batchExpected = new float[batchSize * nOut];
+		Random random = new Random();
+		while (running) {
+			if (credits.get() == 0) {
+				// Checking credits again after idle is set can't miss an add,
+				// it either sees idle or added before the check
+				idle = true;
+				if (credits.get() == 0 && running) {
+					LockSupport.park(this);
+				}
+				idle = false;
+				if (Thread.interrupted()) {
+					return;
+				}
+				continue;
+			}
+			// The only thread that takes credits
+			credits.decrementAndGet();
+			int count = buffer.sample(batchInputs, batchExpected, null, batchSize, random);
+			if (count == 0) {
+				continue;
+			}
+			long start = System.nanoTime();
+			master.feedForwardBatch(batchInputs, count);
+			master.backPropBatch(batchExpected, count);
+			batchNanos += System.nanoTime() - start;
+			long b = batches + 1;
+			batches = b;
+			if (b % publishInterval == 0) {
+				publisher.publish(master);
+			}
+		}
+	}
+}
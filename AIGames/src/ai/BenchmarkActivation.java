@@ -0,0 +1,90 @@
+package ai;
+
+import java.util.Random;
+
+/**
+ * Accuracy and speed of every Activation against Math.tanh: the largest
+ * error over [-8, 8], the time per value of the bulk apply, the time of a
+ * forward pass of the driving network and the error after training the
+ * 3 bit parity of TestNetwork.
+ */
+public class BenchmarkActivation {
+	final static int[] topology = { 18, 30, 30, 30, 10, 4 };
+	final static int values = 4096;
+	final static long minNanos = 500000000L;
+
+	static float sink;
+
+	public static void main(String[] args) {
+		Random random = new Random(0);
+		float[] source = new float[values];
+		for (int i = 0; i < values; i++) {
+			source[i] = random.nextFloat() * 8 - 4;
+		}
+		float[][] samples = new float[64][topology[0]];
+		for (float[] s : samples) {
+			for (int i = 0; i < s.length; i++) {
+				s[i] = random.nextFloat() * 2 - 1;
+			}
+		}
+
+		for (Activation a : Activation.values()) {
+			double maxError = 0;
+			for (int i = -800000; i <= 800000; i++) {
+				float x = i * 1e-5f;
+				maxError = Math.max(maxError, Math.abs(a.apply(x) - Math.tanh(x)));
+			}
+
+			float[] work = new float[values];
+			long runs = 0;
+			long start = System.nanoTime();
+			long applyTime;
+			do {
+				System.arraycopy(source, 0, work, 0, values);
+				a.apply(work, 0, values);
+				sink += work[(int) runs & (values - 1)];
+				runs++;
+			} while ((applyTime = System.nanoTime() - start) < minNanos);
+			float perValue = applyTime / (float) (runs * values);
+
+			NeuralNetwork nn = new NeuralNetwork(topology, a);
+			runs = 0;
+			start = System.nanoTime();
+			long forwardTime;
+			do {
+				sink += nn.feedForward(samples[(int) runs & 63])[0];
+				runs++;
+			} while ((forwardTime = System.nanoTime() - start) < minNanos);
+
+			System.out.println(a + ": max error " + (float) maxError + ", apply " + perValue + " ns/value, forward "
+					+ (forwardTime / (float) runs) + " ns, parity error " + parityError(a));
+		}
+		System.out.println(sink != 0 ? "" : " ");
+	}
+
+	/**
+	 * Largest distance from the target after training 3 bit parity.
+	 */
+	static float parityError(Activation a) {
+		NeuralNetwork nn = new NeuralNetwork(new int[] { 3, 25, 25, 1 }, a);
+		float[][] inputs = new float[8][3];
+		float[][] targets = new float[8][1];
+		for (int i = 0; i < 8; i++) {
+			inputs[i][0] = i >> 2 & 1;
+			inputs[i][1] = i >> 1 & 1;
+			inputs[i][2] = i & 1;
+			targets[i][0] = Integer.bitCount(i) & 1;
+		}
+		for (int epoch = 0; epoch < 5000; epoch++) {
+			for (int i = 0; i < 8; i++) {
+				nn.feedForward(inputs[i]);
+				nn.backProp(targets[i]);
+			}
+		}
+		float error = 0;
+		for (int i = 0; i < 8; i++) {
+			error = Math.max(error, Math.abs(nn.feedForward(inputs[i])[0] - targets[i][0]));
+		}
+		return error;
+	}
+}
@@ -0,0 +1,80 @@
+package ai;
+
+import java.util.Random;
+
+/**
+ * Inference cost per car for one network driving a growing number of cars,
+ * once car by car with Inference and once as one BatchInference pass. Checks
+ * that both agree first.
+ *
+ * Arguments: [activation, default TANH]. With TANH Math.tanh takes most of
+ * the time of both, FAST_TANH shows the matrix products.
+ */
+public class BenchmarkBatchInference {
+	final static int[] topology = { 18, 30, 30, 30, 10, 4 };
+	final static int[] carCounts = { 1, 16, 64, 256, 1024, 4096 };
+	final static long minNanos = 500000000L;
+
+	static float sink;
+
+	public static void main(String[] args) {
+		Activation activation = args.length > 0 ? Activation.valueOf(args[0]) : Activation.TANH;
+		WeightSnapshot snapshot = new WeightSnapshot(new NeuralNetwork(topology, activation), 0);
+		int nIn = topology[0];
+		int nOut = topology[topology.length - 1];
+		Random random = new Random(0);
+		Inference.Workspace single = snapshot.createWorkspace();
+		BatchInference.Workspace batch = new BatchInference.Workspace(topology);
+
+		for (int cars : carCounts) {
+			float[][] rows = new float[cars][nIn];
+			float[] inputs = new float[nIn * cars];
+			for (int c = 0; c < cars; c++) {
+				for (int f = 0; f < nIn; f++) {
+					rows[c][f] = random.nextFloat() * 2 - 1;
+					inputs[f * cars + c] = rows[c][f];
+				}
+			}
+			float[] outputs = new float[nOut * cars];
+			float[] out = new float[nOut];
+
+			snapshot.inferBatch(inputs, cars, outputs, batch);
+			float maxError = 0;
+			for (int c = 0; c < cars; c++) {
+				snapshot.infer(rows[c], single, out);
+				for (int o = 0; o < nOut; o++) {
+					maxError = Math.max(maxError, Math.abs(out[o] - outputs[o * cars + c]));
+				}
+			}
+
+			// Warmup, then repeat until enough time has passed
+			for (long start = System.nanoTime(); System.nanoTime() - start < minNanos / 2;) {
+				snapshot.inferBatch(inputs, cars, outputs, batch);
+				for (int c = 0; c < cars; c++) {
+					sink += snapshot.infer(rows[c], single, out)[0];
+				}
+			}
+			long singleRuns = 0;
+			long start = System.nanoTime();
+			long singleTime;
+			do {
+				for (int c = 0; c < cars; c++) {
+					sink += snapshot.infer(rows[c], single, out)[0];
+				}
+				singleRuns++;
+			} while ((singleTime = System.nanoTime() - start) < minNanos);
+			long batchRuns = 0;
+			start = System.nanoTime();
+			long batchTime;
+			do {
+				snapshot.inferBatch(inputs, cars, outputs, batch);
+				sink += outputs[0];
+				batchRuns++;
+			} while ((batchTime = System.nanoTime() - start) < minNanos);
+
+			System.out.println(cars + " cars: single " + (singleTime / (float) (singleRuns * cars)) + " ns/car, batch "
+					+ (batchTime / (float) (batchRuns * cars)) + " ns/car, max difference " + maxError);
+		}
+		System.out.println(sink != 0 ? "" : " ");
+	}
+}
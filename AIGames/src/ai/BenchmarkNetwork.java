@@ -0,0 +1,226 @@
+package ai;
+
+import java.util.Random;
+
+/**
+ * Flat against nested weights and batched against per-sample training.
+ *
+ * Arguments: [activation, default TANH]. Math.tanh takes most of the time
+ * of a forward pass, FAST_TANH shows the difference of the layouts.
+ */
+public class BenchmarkNetwork {
+	final static int[] topology = { 18, 30, 30, 30, 10, 4 };
+	final static int warmupIterations = 200000;
+	final static int iterations = 1000000;
+
+	static float sink;
+
+	/**
+	 * The former float[][] implementation, kept as the baseline.
+	 */
+	static class NestedNetwork {
+		float[][][] weights, weightsDelta;
+		float[][] outputs, gamma;
+		float[][] inputs;
+		float learningRate = 0.02f;
+		final Activation activation;
+
+		NestedNetwork(NeuralNetwork nn) {
+			activation = nn.layers[0].activation;
+			int n = nn.layers.length;
+			weights = new float[n][][];
+			weightsDelta = new float[n][][];
+			outputs = new float[n][];
+			gamma = new float[n][];
+			inputs = new float[n][];
+			for (int l = 0; l < n; l++) {
+				NeuralNetwork.Layer layer = nn.layers[l];
+				weights[l] = new float[layer.numberOfOutputs][layer.numberOfInputs];
+				weightsDelta[l] = new float[layer.numberOfOutputs][layer.numberOfInputs];
+				outputs[l] = new float[layer.numberOfOutputs];
+				gamma[l] = new float[layer.numberOfOutputs];
+				for (int i = 0; i < layer.numberOfOutputs; i++) {
+					for (int j = 0; j < layer.numberOfInputs; j++) {
+						weights[l][i][j] = layer.weights[i * layer.numberOfInputs + j];
+					}
+				}
+			}
+		}
+
+		float[] feedForward(float[] in) {
+			for (int l = 0; l < weights.length; l++) {
+				inputs[l] = in;
+				float[][] w = weights[l];
+				float[] out = outputs[l];
+				for (int i = 0; i < out.length; i++) {
+					out[i] = 0;
+					for (int j = 0; j < in.length; j++) {
+						out[i] += in[j] * w[i][j];
+					}
+					out[i] = activation.apply(out[i]);
+				}
+				in = out;
+			}
+			return in;
+		}
+
+		void backProp(float[] expected) {
+			int last = weights.length - 1;
+			for (int l = last; l >= 0; l--) {
+				float[] out = outputs[l];
+				float[] g = gamma[l];
+				if (l == last) {
+					for (int i = 0; i < out.length; i++) {
+						g[i] = (out[i] - expected[i]) * activation.derivative(out[i]);
+					}
+				} else {
+					float[] gf = gamma[l + 1];
+					float[][] wf = weights[l + 1];
+					for (int i = 0; i < out.length; i++) {
+						g[i] = 0;
+						for (int j = 0; j < gf.length; j++) {
+							g[i] += gf[j] * wf[j][i];
+						}
+						g[i] *= activation.derivative(out[i]);
+					}
+				}
+				float[] in = inputs[l];
+				for (int i = 0; i < out.length; i++) {
+					for (int j = 0; j < in.length; j++) {
+						weightsDelta[l][i][j] = g[i] * in[j];
+					}
+				}
+			}
+			for (int l = 0; l < weights.length; l++) {
+				for (int i = 0; i < weights[l].length; i++) {
+					for (int j = 0; j < weights[l][i].length; j++) {
+						weights[l][i][j] -= weightsDelta[l][i][j] * learningRate;
+					}
+				}
+			}
+		}
+	}
+
+	public static void main(String[] args) {
+		Activation activation = args.length > 0 ? Activation.valueOf(args[0]) : Activation.TANH;
+		Random random = new Random(1);
+		float[][] samples = new float[64][topology[0]];
+		float[][] expected = new float[64][topology[topology.length - 1]];
+		for (int i = 0; i < samples.length; i++) {
+			for (int j = 0; j < samples[i].length; j++) {
+				samples[i][j] = random.nextFloat() * 2 - 1;
+			}
+			for (int j = 0; j < expected[i].length; j++) {
+				expected[i][j] = random.nextBoolean() ? 1 : -1;
+			}
+		}
+
+		NeuralNetwork flat = new NeuralNetwork(topology, activation);
+		NestedNetwork nested = new NestedNetwork(flat);
+		float maxDifference = 0;
+		for (int i = 0; i < samples.length; i++) {
+			float[] a = flat.feedForward(samples[i]);
+			float[] b = nested.feedForward(samples[i]);
+			for (int j = 0; j < a.length; j++) {
+				maxDifference = Math.max(maxDifference, Math.abs(a[j] - b[j]));
+			}
+		}
+		System.out.println("Max output difference: " + maxDifference);
+
+		for (int round = 0; round < 2; round++) {
+			boolean report = round == 1;
+			int n = report ? iterations : warmupIterations;
+
+			long start = System.nanoTime();
+			for (int i = 0; i < n; i++) {
+				sink += nested.feedForward(samples[i & 63])[0];
+			}
+			long nestedForward = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (int i = 0; i < n; i++) {
+				sink += flat.feedForward(samples[i & 63])[0];
+			}
+			long flatForward = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (int i = 0; i < n; i++) {
+				nested.feedForward(samples[i & 63]);
+				nested.backProp(expected[i & 63]);
+			}
+			long nestedTrain = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (int i = 0; i < n; i++) {
+				flat.feedForward(samples[i & 63]);
+				flat.backProp(expected[i & 63]);
+			}
+			long flatTrain = System.nanoTime() - start;
+
+			if (report) {
+				System.out.println("feedForward nested: " + (nestedForward / (float) n) + " ns/op");
+				System.out.println("feedForward flat:   " + (flatForward / (float) n) + " ns/op ("
+						+ (nestedForward / (float) flatForward) + "x)");
+				System.out.println("feedForward+backProp nested: " + (nestedTrain / (float) n) + " ns/op");
+				System.out.println("feedForward+backProp flat:   " + (flatTrain / (float) n) + " ns/op ("
+						+ (nestedTrain / (float) flatTrain) + "x)");
+			}
+		}
+		benchmarkBatches(random, activation);
+		System.out.println(sink != 0 ? "" : " ");
+	}
+
+	static void benchmarkBatches(Random random, Activation activation) {
+		int inputs = topology[0];
+		int outputs = topology[topology.length - 1];
+		int[] batchSizes = { 32, 128, 512 };
+		for (int batchSize : batchSizes) {
+			float[] batchInputs = new float[batchSize * inputs];
+			float[] batchExpected = new float[batchSize * outputs];
+			float[][] samples = new float[batchSize][inputs];
+			float[][] expected = new float[batchSize][outputs];
+			for (int b = 0; b < batchSize; b++) {
+				for (int i = 0; i < inputs; i++) {
+					samples[b][i] = random.nextFloat() * 2 - 1;
+					batchInputs[b * inputs + i] = samples[b][i];
+				}
+				for (int i = 0; i < outputs; i++) {
+					expected[b][i] = random.nextBoolean() ? 1 : -1;
+					batchExpected[b * outputs + i] = expected[b][i];
+				}
+			}
+			NeuralNetwork single = new NeuralNetwork(topology, activation);
+			NeuralNetwork batched = new NeuralNetwork(single);
+			int rounds = Math.max(1, iterations / batchSize / 4);
+
+			// Best of four alternating rounds, the first one warms up
+			long singleTime = Long.MAX_VALUE, batchTime = Long.MAX_VALUE;
+			for (int round = 0; round < 4; round++) {
+				long start = System.nanoTime();
+				for (int r = 0; r < rounds; r++) {
+					for (int b = 0; b < batchSize; b++) {
+						single.feedForward(samples[b]);
+						single.backProp(expected[b]);
+					}
+				}
+				long time = System.nanoTime() - start;
+				if (round > 0) {
+					singleTime = Math.min(singleTime, time);
+				}
+
+				start = System.nanoTime();
+				for (int r = 0; r < rounds; r++) {
+					batched.feedForwardBatch(batchInputs, batchSize);
+					batched.backPropBatch(batchExpected, batchSize);
+				}
+				time = System.nanoTime() - start;
+				if (round > 0) {
+					batchTime = Math.min(batchTime, time);
+				}
+			}
+			float samplesRun = rounds * (float) batchSize;
+			System.out.println("Batch " + batchSize + ": per-sample " + (singleTime / samplesRun) + " ns/sample, batched "
+					+ (batchTime / samplesRun) + " ns/sample (" + (singleTime / (float) batchTime) + "x)");
+		}
+	}
+}
@@ -0,0 +1,164 @@
+package ai;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Saves network checkpoints on a background thread. The caller only pays for
+ * copying the weights. Every checkpoint is written to a temporary file and
+ * renamed into place, so a crash never leaves a half written file behind.
+ * The latest checkpoint is published as &lt;base&gt;.nnb, the last few are kept
+ * as &lt;base&gt;.&lt;counter&gt;.nnb.
+ */
+public class CheckpointWriter {
+	final File latest;
+	final File directory;
+	final String name;
+	final int keep;
+	final ArrayDeque<File> history = new ArrayDeque<File>();
+
+	final LinkedBlockingQueue<Checkpoint> pending = new LinkedBlockingQueue<Checkpoint>();
+	final ConcurrentLinkedQueue<Checkpoint> free = new ConcurrentLinkedQueue<Checkpoint>();
+	final Checkpoint stop = new Checkpoint();
+	final Thread thread;
+
+	static class Checkpoint {
+		int[] topology;
+		Activation[] activations;
+		float[] weights;
+		long savingCounter;
+	}
+
+	public CheckpointWriter(String basePath, int keep) {
+		File base = new File(basePath);
+		File parent = base.getAbsoluteFile().getParentFile();
+		this.directory = parent;
+		this.name = base.getName();
+		this.latest = new File(parent, name + NetworkFile.extension);
+		this.keep = keep;
+		findHistory();
+
+		thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				writeLoop();
+			}
+		}, "CheckpointWriter-" + name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Takes a copy of the weights of nn and queues it for writing.
+	 */
+	public void submit(NeuralNetwork nn, long savingCounter) {
+		Checkpoint c = free.poll();
+		if (c == null) {
+			c = new Checkpoint();
+		}
+		int[] topology = nn.getTopology();
+		if (c.weights == null || c.weights.length != nn.getWeightCount()) {
+			c.weights = new float[nn.getWeightCount()];
+		}
+		nn.copyWeights(c.weights);
+		c.topology = topology;
+		c.activations = nn.getActivations();
+		c.savingCounter = savingCounter;
+		pending.add(c);
+	}
+
+	/**
+	 * Writes everything still queued and stops the writer thread.
+	 */
+	public void close() {
+		pending.add(stop);
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void writeLoop() {
+		while (true) {
+			Checkpoint c;
+			try {
+				c = pending.take();
+			} catch (InterruptedException e) {
+				return;
+			}
+			if (c == stop) {
+				return;
+			}
+			write(c);
+			free.add(c);
+		}
+	}
+
+	private void write(Checkpoint c) {
+		File numbered = new File(directory, name + "." + c.savingCounter + NetworkFile.extension);
+		File tmp = null;
+		try {
+			// Unique per write, another writer on the same base path can't clobber it
+			tmp = Files.createTempFile(directory.toPath(), name, ".tmp").toFile();
+			NetworkFile.write(c.topology, c.activations, c.weights, c.savingCounter, tmp);
+			move(tmp, numbered);
+			tmp = Files.createTempFile(directory.toPath(), name, ".tmp").toFile();
+			Files.copy(numbered.toPath(), tmp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			move(tmp, latest);
+			tmp = null;
+			history.remove(numbered);
+			history.add(numbered);
+			while (history.size() > keep) {
+				Files.deleteIfExists(history.poll().toPath());
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			if (tmp != null) {
+				tmp.delete();
+			}
+		}
+	}
+
+	private static void move(File from, File to) throws IOException {
+		try {
+			Files.move(from.toPath(), to.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private void findHistory() {
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return;
+		}
+		String prefix = name + ".";
+		long[] counters = new long[files.length];
+		int count = 0;
+		for (File f : files) {
+			String n = f.getName();
+			if (n.startsWith(prefix) && n.endsWith(NetworkFile.extension)) {
+				String counter = n.substring(prefix.length(), n.length() - NetworkFile.extension.length());
+				try {
+					long parsed = Long.parseLong(counter);
+					counters[count++] = parsed;
+				} catch (NumberFormatException e) {
+					// Not one of ours
+				}
+			}
+		}
+		counters = Arrays.copyOf(counters, count);
+		Arrays.sort(counters);
+		for (long counter : counters) {
+			history.add(new File(directory, prefix + counter + NetworkFile.extension));
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package ai;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Converts text networks written by NeuralNetwork.toString into the binary
+ * NetworkFile format. Takes files or directories, defaults to
+ * res/networks/cars. Each file X is written next to it as X.nnb.
+ */
+public class ConvertNetworks {
+	public static void main(String[] args) {
+		if (args.length == 0) {
+			args = new String[] { "res/networks/cars" };
+		}
+		for (String arg : args) {
+			File f = new File(arg);
+			if (f.isDirectory()) {
+				File[] files = f.listFiles();
+				if (files != null) {
+					for (File file : files) {
+						if (file.isFile()) {
+							convert(file);
+						}
+					}
+				}
+			} else {
+				convert(f);
+			}
+		}
+	}
+
+	static void convert(File text) {
+		if (text.getName().endsWith(NetworkFile.extension)) {
+			return;
+		}
+		File binary = new File(text.getPath() + NetworkFile.extension);
+		try {
+			NeuralNetwork nn = new NeuralNetwork(new int[] { 1, 1 });
+			BufferedReader br = new BufferedReader(new FileReader(text));
+			long savingCounter;
+			try {
+				savingCounter = nn.parse(br);
+			} finally {
+				br.close();
+			}
+			NetworkFile.write(nn, savingCounter, binary);
+
+			NeuralNetwork check = new NeuralNetwork(new int[] { 1, 1 });
+			NetworkFile.read(check, binary);
+			float[] a = new float[nn.getWeightCount()];
+			float[] b = new float[check.getWeightCount()];
+			nn.copyWeights(a);
+			check.copyWeights(b);
+			if (!Arrays.equals(a, b)) {
+				throw new IOException("Round trip mismatch");
+			}
+			System.out.println(text + " -> " + binary + " (" + text.length() + " -> " + binary.length() + " bytes)");
+		} catch (IOException e) {
+			System.out.println("Couldn't convert " + text + ": " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,135 @@
+package ai;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+/**
+ * Genetic algorithm over the weights of networks with a fixed topology. Each
+ * generation keeps the best few genomes unchanged (elitism) and fills the
+ * rest with children of tournament selected parents, built by uniform
+ * crossover and gaussian mutation. Evaluating the genomes is up to the
+ * caller.
+ */
+public class Evolution {
+	final int[] topology;
+	final int weightCount;
+	float[][] population, next;
+	final Random random = new Random();
+
+	int eliteCount = 2;
+	int tournamentSize = 3;
+	float crossoverRate = 0.7f;
+	float mutationRate = 0.05f;
+	float mutationStrength = 0.2f;
+
+	final float[] bestGenome;
+	float bestFitness = -Float.MAX_VALUE;
+	long generation = 0;
+
+	/**
+	 * Starts from seed and mutated copies of it.
+	 */
+	public Evolution(NeuralNetwork seed, int size) {
+		topology = seed.getTopology();
+		weightCount = seed.getWeightCount();
+		population = new float[size][weightCount];
+		next = new float[size][weightCount];
+		seed.copyWeights(population[0]);
+		for (int i = 1; i < size; i++) {
+			System.arraycopy(population[0], 0, population[i], 0, weightCount);
+			mutate(population[i]);
+		}
+		bestGenome = population[0].clone();
+	}
+
+	public int size() {
+		return population.length;
+	}
+
+	public float[] getGenome(int index) {
+		return population[index];
+	}
+
+	public int[] getTopology() {
+		return topology.clone();
+	}
+
+	/**
+	 * Breeds the next generation from the fitness of every genome of the
+	 * current one.
+	 */
+	public void nextGeneration(float[] fitness) {
+		Integer[] order = new Integer[population.length];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		final float[] f = fitness;
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Float.compare(f[b], f[a]);
+			}
+		});
+		if (fitness[order[0]] > bestFitness) {
+			bestFitness = fitness[order[0]];
+			System.arraycopy(population[order[0]], 0, bestGenome, 0, weightCount);
+		}
+
+		int elites = Math.min(eliteCount, population.length);
+		for (int i = 0; i < elites; i++) {
+			System.arraycopy(population[order[i]], 0, next[i], 0, weightCount);
+		}
+		for (int i = elites; i < population.length; i++) {
+			float[] child = next[i];
+			float[] a = population[select(fitness)];
+			if (random.nextFloat() < crossoverRate) {
+				float[] b = population[select(fitness)];
+				for (int w = 0; w < weightCount; w++) {
+					child[w] = random.nextBoolean() ? a[w] : b[w];
+				}
+			} else {
+				System.arraycopy(a, 0, child, 0, weightCount);
+			}
+			mutate(child);
+		}
+		float[][] t = population;
+		population = next;
+		next = t;
+		generation++;
+	}
+
+	private int select(float[] fitness) {
+		int best = random.nextInt(population.length);
+		for (int i = 1; i < tournamentSize; i++) {
+			int c = random.nextInt(population.length);
+			if (fitness[c] > fitness[best]) {
+				best = c;
+			}
+		}
+		return best;
+	}
+
+	private void mutate(float[] genome) {
+		for (int w = 0; w < weightCount; w++) {
+			if (random.nextFloat() < mutationRate) {
+				genome[w] += (float) random.nextGaussian() * mutationStrength;
+			}
+		}
+	}
+
+	/**
+	 * Copies the best genome found so far into nn.
+	 */
+	public void copyBestTo(NeuralNetwork nn) {
+		nn.setWeights(bestGenome);
+	}
+
+	public float getBestFitness() {
+		return bestFitness;
+	}
+
+	public long getGeneration() {
+		return generation;
+	}
+}
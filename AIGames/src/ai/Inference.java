@@ -0,0 +1,59 @@
+package ai;
+
+/**
+ * Forward pass that keeps no state in the network. The activations live in a
+ * Workspace owned by the caller and the weights are only read, so one set of
+ * weights can serve any number of cars and threads at once as long as every
+ * thread brings its own workspace. Nothing is allocated per call.
+ */
+public final class Inference {
+	private Inference() {
+	}
+
+	/**
+	 * Scratch activations for one thread, large enough for the widest layer
+	 * of the topologies it is used with.
+	 */
+	public static final class Workspace {
+		final float[] a, b;
+
+		public Workspace(int[] topology) {
+			this(maxWidth(topology));
+		}
+
+		public Workspace(int width) {
+			a = new float[width];
+			b = new float[width];
+		}
+	}
+
+	static int maxWidth(int[] topology) {
+		int width = 0;
+		for (int t : topology) {
+			width = Math.max(width, t);
+		}
+		return width;
+	}
+
+	/**
+	 * Runs weights, one row-major array per layer, with their activations on
+	 * input and writes the result into output, which is returned.
+	 */
+	public static float[] run(float[][] weights, int[] topology, Activation[] activations, float[] input,
+			Workspace ws, float[] output) {
+		float[] in = input;
+		int last = weights.length - 1;
+		for (int l = 0; l <= last; l++) {
+			float[] out = l == last ? output : (l & 1) == 0 ? ws.a : ws.b;
+			layer(weights[l], topology[l], topology[l + 1], activations[l], in, out);
+			in = out;
+		}
+		return output;
+	}
+
+	static void layer(float[] weights, int numberOfInputs, int numberOfOutputs, Activation activation, float[] in,
+			float[] out) {
+		Kernel.multiply(weights, numberOfOutputs, numberOfInputs, in, out);
+		activation.apply(out, 0, numberOfOutputs);
+	}
+}
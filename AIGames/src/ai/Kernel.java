@@ -0,0 +1,269 @@
+package ai;
+
+/**
+ * Dense vector kernels on flat row-major arrays. The loops are unrolled by
+ * four with independent accumulators, which breaks the dependency chain of
+ * the float adds. HotSpot doesn't vectorize such reductions, the gain is
+ * only instruction-level parallelism.
+ */
+public final class Kernel {
+	private Kernel() {
+	}
+
+	public static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+		float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+		int i = 0;
+		int bound = length & ~3;
+		for (; i < bound; i += 4) {
+			s0 += a[aOffset + i] * b[bOffset + i];
+			s1 += a[aOffset + i + 1] * b[bOffset + i + 1];
+			s2 += a[aOffset + i + 2] * b[bOffset + i + 2];
+			s3 += a[aOffset + i + 3] * b[bOffset + i + 3];
+		}
+		for (; i < length; i++) {
+			s0 += a[aOffset + i] * b[bOffset + i];
+		}
+		return (s0 + s1) + (s2 + s3);
+	}
+
+	/**
+	 * y = W x for a row-major matrix w of rows by columns. Four rows are
+	 * summed at once, so every x[k] is loaded once per four rows and the
+	 * four sums stay in registers.
+	 */
+	public static void multiply(float[] w, int rows, int columns, float[] x, float[] y) {
+		int i = 0;
+		for (; i + 4 <= rows; i += 4) {
+			int r0 = i * columns;
+			int r1 = r0 + columns, r2 = r1 + columns, r3 = r2 + columns;
+			float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+			for (int k = 0; k < columns; k++) {
+				float v = x[k];
+				s0 += w[r0 + k] * v;
+				s1 += w[r1 + k] * v;
+				s2 += w[r2 + k] * v;
+				s3 += w[r3 + k] * v;
+			}
+			y[i] = s0;
+			y[i + 1] = s1;
+			y[i + 2] = s2;
+			y[i + 3] = s3;
+		}
+		for (; i < rows; i++) {
+			y[i] = dot(w, i * columns, x, 0, columns);
+		}
+	}
+
+	/**
+	 * y += alpha * x
+	 */
+	public static void axpy(float alpha, float[] x, int xOffset, float[] y, int yOffset, int length) {
+		int i = 0;
+		int bound = length & ~3;
+		for (; i < bound; i += 4) {
+			y[yOffset + i] += alpha * x[xOffset + i];
+			y[yOffset + i + 1] += alpha * x[xOffset + i + 1];
+			y[yOffset + i + 2] += alpha * x[xOffset + i + 2];
+			y[yOffset + i + 3] += alpha * x[xOffset + i + 3];
+		}
+		for (; i < length; i++) {
+			y[yOffset + i] += alpha * x[xOffset + i];
+		}
+	}
+
+	/**
+	 * Y = X W^T for a batch: x holds count rows of columns values, w is rows
+	 * by columns, y gets count rows of rows values. Tiles of 4 rows of w by 4
+	 * rows of x are summed in registers, so every value loaded is used four
+	 * times.
+	 */
+	public static void multiplyBatch(float[] w, int rows, int columns, float[] x, int count, float[] y) {
+		int i = 0;
+		for (; i + 4 <= rows; i += 4) {
+			int r0 = i * columns;
+			int r1 = r0 + columns, r2 = r1 + columns, r3 = r2 + columns;
+			int b = 0;
+			for (; b + 4 <= count; b += 4) {
+				int x0 = b * columns;
+				int x1 = x0 + columns, x2 = x1 + columns, x3 = x2 + columns;
+				float s00 = 0, s01 = 0, s02 = 0, s03 = 0;
+				float s10 = 0, s11 = 0, s12 = 0, s13 = 0;
+				float s20 = 0, s21 = 0, s22 = 0, s23 = 0;
+				float s30 = 0, s31 = 0, s32 = 0, s33 = 0;
+				for (int k = 0; k < columns; k++) {
+					float v0 = x[x0 + k], v1 = x[x1 + k], v2 = x[x2 + k], v3 = x[x3 + k];
+					float w0 = w[r0 + k], w1 = w[r1 + k], w2 = w[r2 + k], w3 = w[r3 + k];
+					s00 += w0 * v0;
+					s01 += w0 * v1;
+					s02 += w0 * v2;
+					s03 += w0 * v3;
+					s10 += w1 * v0;
+					s11 += w1 * v1;
+					s12 += w1 * v2;
+					s13 += w1 * v3;
+					s20 += w2 * v0;
+					s21 += w2 * v1;
+					s22 += w2 * v2;
+					s23 += w2 * v3;
+					s30 += w3 * v0;
+					s31 += w3 * v1;
+					s32 += w3 * v2;
+					s33 += w3 * v3;
+				}
+				int y0 = b * rows + i;
+				store(y, y0, s00, s10, s20, s30);
+				store(y, y0 + rows, s01, s11, s21, s31);
+				store(y, y0 + 2 * rows, s02, s12, s22, s32);
+				store(y, y0 + 3 * rows, s03, s13, s23, s33);
+			}
+			for (; b < count; b++) {
+				for (int r = i; r < i + 4; r++) {
+					y[b * rows + r] = dot(w, r * columns, x, b * columns, columns);
+				}
+			}
+		}
+		for (; i < rows; i++) {
+			for (int b = 0; b < count; b++) {
+				y[b * rows + i] = dot(w, i * columns, x, b * columns, columns);
+			}
+		}
+	}
+
+	/**
+	 * Y = G W for a batch: g holds count rows of inner values, w is inner by
+	 * columns, y gets count rows of columns values. The backward pass through
+	 * a layer, summed in tiles of 4 rows of g by 4 columns of w.
+	 */
+	public static void multiplyBatchTransposed(float[] g, int count, int inner, float[] w, int columns, float[] y) {
+		int b = 0;
+		for (; b + 4 <= count; b += 4) {
+			int g0 = b * inner;
+			int g1 = g0 + inner, g2 = g1 + inner, g3 = g2 + inner;
+			int i = 0;
+			for (; i + 4 <= columns; i += 4) {
+				float s00 = 0, s01 = 0, s02 = 0, s03 = 0;
+				float s10 = 0, s11 = 0, s12 = 0, s13 = 0;
+				float s20 = 0, s21 = 0, s22 = 0, s23 = 0;
+				float s30 = 0, s31 = 0, s32 = 0, s33 = 0;
+				for (int j = 0, r = i; j < inner; j++, r += columns) {
+					float a0 = g[g0 + j], a1 = g[g1 + j], a2 = g[g2 + j], a3 = g[g3 + j];
+					float w0 = w[r], w1 = w[r + 1], w2 = w[r + 2], w3 = w[r + 3];
+					s00 += a0 * w0;
+					s01 += a0 * w1;
+					s02 += a0 * w2;
+					s03 += a0 * w3;
+					s10 += a1 * w0;
+					s11 += a1 * w1;
+					s12 += a1 * w2;
+					s13 += a1 * w3;
+					s20 += a2 * w0;
+					s21 += a2 * w1;
+					s22 += a2 * w2;
+					s23 += a2 * w3;
+					s30 += a3 * w0;
+					s31 += a3 * w1;
+					s32 += a3 * w2;
+					s33 += a3 * w3;
+				}
+				int y0 = b * columns + i;
+				store(y, y0, s00, s01, s02, s03);
+				store(y, y0 + columns, s10, s11, s12, s13);
+				store(y, y0 + 2 * columns, s20, s21, s22, s23);
+				store(y, y0 + 3 * columns, s30, s31, s32, s33);
+			}
+			for (; i < columns; i++) {
+				for (int c = b; c < b + 4; c++) {
+					y[c * columns + i] = column(g, c * inner, inner, w, i, columns);
+				}
+			}
+		}
+		for (; b < count; b++) {
+			for (int i = 0; i < columns; i++) {
+				y[b * columns + i] = column(g, b * inner, inner, w, i, columns);
+			}
+		}
+	}
+
+	/**
+	 * Y = G^T X for a batch, the summed outer products of the rows of g and
+	 * x: g holds count rows of rows values, x count rows of columns values, y
+	 * gets rows by columns. The weight gradient of a layer, summed in tiles
+	 * of 4 by 4.
+	 */
+	public static void multiplyTransposedBatch(float[] g, int rows, float[] x, int columns, int count, float[] y) {
+		int i = 0;
+		for (; i + 4 <= rows; i += 4) {
+			int k = 0;
+			for (; k + 4 <= columns; k += 4) {
+				float s00 = 0, s01 = 0, s02 = 0, s03 = 0;
+				float s10 = 0, s11 = 0, s12 = 0, s13 = 0;
+				float s20 = 0, s21 = 0, s22 = 0, s23 = 0;
+				float s30 = 0, s31 = 0, s32 = 0, s33 = 0;
+				for (int b = 0, gb = i, xb = k; b < count; b++, gb += rows, xb += columns) {
+					float a0 = g[gb], a1 = g[gb + 1], a2 = g[gb + 2], a3 = g[gb + 3];
+					float v0 = x[xb], v1 = x[xb + 1], v2 = x[xb + 2], v3 = x[xb + 3];
+					s00 += a0 * v0;
+					s01 += a0 * v1;
+					s02 += a0 * v2;
+					s03 += a0 * v3;
+					s10 += a1 * v0;
+					s11 += a1 * v1;
+					s12 += a1 * v2;
+					s13 += a1 * v3;
+					s20 += a2 * v0;
+					s21 += a2 * v1;
+					s22 += a2 * v2;
+					s23 += a2 * v3;
+					s30 += a3 * v0;
+					s31 += a3 * v1;
+					s32 += a3 * v2;
+					s33 += a3 * v3;
+				}
+				int y0 = i * columns + k;
+				store(y, y0, s00, s01, s02, s03);
+				store(y, y0 + columns, s10, s11, s12, s13);
+				store(y, y0 + 2 * columns, s20, s21, s22, s23);
+				store(y, y0 + 3 * columns, s30, s31, s32, s33);
+			}
+			for (; k < columns; k++) {
+				for (int r = i; r < i + 4; r++) {
+					y[r * columns + k] = column(g, r, rows, x, k, columns, count);
+				}
+			}
+		}
+		for (; i < rows; i++) {
+			for (int k = 0; k < columns; k++) {
+				y[i * columns + k] = column(g, i, rows, x, k, columns, count);
+			}
+		}
+	}
+
+	private static void store(float[] y, int o, float s0, float s1, float s2, float s3) {
+		y[o] = s0;
+		y[o + 1] = s1;
+		y[o + 2] = s2;
+		y[o + 3] = s3;
+	}
+
+	/**
+	 * Row of g from gOffset on times column i of w.
+	 */
+	private static float column(float[] g, int gOffset, int inner, float[] w, int i, int columns) {
+		float sum = 0;
+		for (int j = 0; j < inner; j++, i += columns) {
+			sum += g[gOffset + j] * w[i];
+		}
+		return sum;
+	}
+
+	/**
+	 * Column i of g times column k of x, both count rows long.
+	 */
+	private static float column(float[] g, int i, int rows, float[] x, int k, int columns, int count) {
+		float sum = 0;
+		for (int b = 0; b < count; b++, i += rows, k += columns) {
+			sum += g[i] * x[k];
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,138 @@
+package ai;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.zip.CRC32;
+
+/**
+ * Binary network checkpoint. All values are little-endian:
+ *
+ * <pre>
+ * int    magic "AINN"
+ * int    version
+ * long   saving counter
+ * int    number of topology entries n
+ * int[n] topology (inputs, hidden..., outputs)
+ * int[n-1] activation of every layer, ordinal of Activation (since version 2)
+ * int    number of weights
+ * int    CRC32 of the weight bytes
+ * float  weights, layer after layer, each layer row-major
+ * </pre>
+ *
+ * Version 1 files have no activations, all their layers use tanh.
+ */
+public class NetworkFile {
+	public final static String extension = ".nnb";
+	final static int magic = 'A' | 'I' << 8 | 'N' << 16 | 'N' << 24;
+	final static int version = 2;
+
+	public static void write(NeuralNetwork nn, long savingCounter, File file) throws IOException {
+		float[] weights = new float[nn.getWeightCount()];
+		nn.copyWeights(weights);
+		write(nn.getTopology(), nn.getActivations(), weights, savingCounter, file);
+	}
+
+	public static void write(int[] topology, Activation[] activations, float[] weights, long savingCounter,
+			File file) throws IOException {
+		int headerSize = 4 + 4 + 8 + 4 + 4 * topology.length + 4 * activations.length + 4 + 4;
+		ByteBuffer buffer = ByteBuffer.allocate(headerSize + 4 * weights.length).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(magic);
+		buffer.putInt(version);
+		buffer.putLong(savingCounter);
+		buffer.putInt(topology.length);
+		for (int t : topology) {
+			buffer.putInt(t);
+		}
+		for (Activation a : activations) {
+			buffer.putInt(a.ordinal());
+		}
+		buffer.putInt(weights.length);
+		int checksumPosition = buffer.position();
+		buffer.putInt(0);
+		buffer.asFloatBuffer().put(weights);
+
+		CRC32 crc = new CRC32();
+		buffer.position(headerSize);
+		crc.update(buffer);
+		buffer.putInt(checksumPosition, (int) crc.getValue());
+		buffer.rewind();
+
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			FileChannel channel = out.getChannel();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			channel.force(true);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Reads the file and loads it into nn. The layers of nn are rebuilt if the
+	 * topology differs. Returns the saving counter.
+	 */
+	public static long read(NeuralNetwork nn, File file) throws IOException {
+		// Read into the heap, not mapped: a live mapping keeps CheckpointWriter from replacing the file on
+		// Windows until it is garbage collected
+		ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+		if (buffer.remaining() < 24 || buffer.getInt() != magic) {
+			throw new IOException("Not a network file: " + file);
+		}
+		int fileVersion = buffer.getInt();
+		if (fileVersion < 1 || fileVersion > version) {
+			throw new IOException("Unsupported network file version " + fileVersion + ": " + file);
+		}
+		long savingCounter = buffer.getLong();
+		int entries = buffer.getInt();
+		if (entries < 2) {
+			throw new IOException("Invalid topology length " + entries + " in network file: " + file);
+		}
+		// Topology, activations, weight count and checksum must be there before anything is allocated
+		long headerInts = fileVersion >= 2 ? 2L * entries + 1 : entries + 2L;
+		if (buffer.remaining() < 4 * headerInts) {
+			throw new IOException("Truncated network file: " + file);
+		}
+		int[] topology = new int[entries];
+		long expectedWeights = 0;
+		for (int i = 0; i < topology.length; i++) {
+			topology[i] = buffer.getInt();
+			if (topology[i] <= 0) {
+				throw new IOException("Invalid layer size " + topology[i] + " in network file: " + file);
+			}
+			if (i > 0) {
+				expectedWeights += (long) topology[i - 1] * topology[i];
+			}
+		}
+		Activation[] activations = new Activation[topology.length - 1];
+		for (int i = 0; i < activations.length; i++) {
+			activations[i] = Activation.TANH;
+			if (fileVersion >= 2) {
+				activations[i] = Activation.read(buffer.getInt(), file);
+			}
+		}
+		int weightCount = buffer.getInt();
+		int checksum = buffer.getInt();
+		if (weightCount != expectedWeights || buffer.remaining() != 4L * expectedWeights) {
+			throw new IOException("Truncated network file: " + file);
+		}
+
+		ByteBuffer weightBytes = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+		CRC32 crc = new CRC32();
+		crc.update(weightBytes.duplicate());
+		if ((int) crc.getValue() != checksum) {
+			throw new IOException("Checksum mismatch in network file: " + file);
+		}
+		FloatBuffer weights = weightBytes.asFloatBuffer();
+		nn.setWeights(topology, weights);
+		nn.setActivations(activations);
+		return savingCounter;
+	}
+}
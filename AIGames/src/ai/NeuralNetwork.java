@@ -2,6 +2,8 @@ package ai;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.Random;
 
@@ -18,6 +20,114 @@ public class NeuralNetwork {
 		}
 	}
 
+	public NeuralNetwork(int[] layer, Activation activation) {
+		this(layer);
+		setActivation(activation);
+	}
+
+	public NeuralNetwork(NeuralNetwork other) {
+		random = new Random();
+		learningRate = other.learningRate;
+		layers = new Layer[other.layers.length];
+		for (int i = 0; i < layers.length; i++) {
+			layers[i] = new Layer(other.layers[i].numberOfInputs, other.layers[i].numberOfOutputs);
+			layers[i].activation = other.layers[i].activation;
+		}
+		other.copyWeightsTo(this);
+	}
+
+	/**
+	 * Uses activation in every layer.
+	 */
+	public void setActivation(Activation activation) {
+		for (Layer l : layers) {
+			l.activation = activation;
+		}
+	}
+
+	public void setActivation(int layer, Activation activation) {
+		layers[layer].activation = activation;
+	}
+
+	/**
+	 * One activation per layer, layer after layer.
+	 */
+	public void setActivations(Activation[] activations) {
+		for (int i = 0; i < layers.length; i++) {
+			layers[i].activation = activations[i];
+		}
+	}
+
+	public Activation[] getActivations() {
+		Activation[] activations = new Activation[layers.length];
+		for (int i = 0; i < layers.length; i++) {
+			activations[i] = layers[i].activation;
+		}
+		return activations;
+	}
+
+	public void copyWeightsTo(NeuralNetwork target) {
+		for (int i = 0; i < layers.length; i++) {
+			System.arraycopy(layers[i].weights, 0, target.layers[i].weights, 0, layers[i].weights.length);
+		}
+	}
+
+	public int[] getTopology() {
+		int[] topology = new int[layers.length + 1];
+		topology[0] = layers[0].numberOfInputs;
+		for (int i = 0; i < layers.length; i++) {
+			topology[i + 1] = layers[i].numberOfOutputs;
+		}
+		return topology;
+	}
+
+	public int getWeightCount() {
+		int count = 0;
+		for (Layer l : layers) {
+			count += l.weights.length;
+		}
+		return count;
+	}
+
+	/**
+	 * Copies all weights, layer after layer, into target.
+	 */
+	public void copyWeights(float[] target) {
+		int offset = 0;
+		for (Layer l : layers) {
+			System.arraycopy(l.weights, 0, target, offset, l.weights.length);
+			offset += l.weights.length;
+		}
+	}
+
+	/**
+	 * Reads all weights, layer after layer, from source. The counterpart of
+	 * copyWeights, the topology stays the same.
+	 */
+	public void setWeights(float[] source) {
+		int offset = 0;
+		for (Layer l : layers) {
+			System.arraycopy(source, offset, l.weights, 0, l.weights.length);
+			offset += l.weights.length;
+		}
+	}
+
+	/**
+	 * Rebuilds the layers for the given topology and reads all weights, layer
+	 * after layer, from source.
+	 */
+	public void setWeights(int[] topology, FloatBuffer source) {
+		if (!Arrays.equals(topology, getTopology())) {
+			layers = new Layer[topology.length - 1];
+			for (int i = 0; i < layers.length; i++) {
+				layers[i] = new Layer(topology[i], topology[i + 1]);
+			}
+		}
+		for (Layer l : layers) {
+			source.get(l.weights);
+		}
+	}
+
 	public float[] feedForward(float[] inputs) {
 		layers[0].feedForward(inputs);
 		for (int i = 1; i < layers.length; i++) {
@@ -26,6 +136,27 @@ public class NeuralNetwork {
 		return layers[layers.length - 1].outputs;
 	}
 
+	/**
+	 * Forward pass that leaves the layers untouched, see Inference. Safe to
+	 * call from several threads with their own workspaces as long as nobody
+	 * trains this network at the same time. Returns output.
+	 */
+	public float[] infer(float[] input, Inference.Workspace ws, float[] output) {
+		float[] in = input;
+		int last = layers.length - 1;
+		for (int i = 0; i <= last; i++) {
+			Layer l = layers[i];
+			float[] out = i == last ? output : (i & 1) == 0 ? ws.a : ws.b;
+			Inference.layer(l.weights, l.numberOfInputs, l.numberOfOutputs, l.activation, in, out);
+			in = out;
+		}
+		return output;
+	}
+
+	public Inference.Workspace createWorkspace() {
+		return new Inference.Workspace(getTopology());
+	}
+
 	public void backProp(float[] expected) {
 		for (int i = layers.length - 1; i >= 0; i--) {
 			if (i == layers.length - 1) {
@@ -39,6 +170,37 @@ public class NeuralNetwork {
 		}
 	}
 
+	/**
+	 * Runs a whole batch at once. inputs holds batchSize rows of input values
+	 * back to back. The returned array holds batchSize rows of outputs and is
+	 * reused by the next call.
+	 */
+	public float[] feedForwardBatch(float[] inputs, int batchSize) {
+		layers[0].feedForwardBatch(inputs, batchSize);
+		for (int i = 1; i < layers.length; i++) {
+			layers[i].feedForwardBatch(layers[i - 1].batchOutputs, batchSize);
+		}
+		return layers[layers.length - 1].batchOutputs;
+	}
+
+	/**
+	 * Backpropagates the batch of the last feedForwardBatch call and applies
+	 * a single update with the mean gradient of the batch.
+	 */
+	public void backPropBatch(float[] expected, int batchSize) {
+		for (int i = layers.length - 1; i >= 0; i--) {
+			if (i == layers.length - 1) {
+				layers[i].backPropOutputBatch(expected, batchSize);
+			} else {
+				Layer next = layers[i + 1];
+				layers[i].backPropHiddenBatch(next.batchGamma, next.weights, next.numberOfOutputs, batchSize);
+			}
+		}
+		for (int i = 0; i < layers.length; i++) {
+			layers[i].updateWeightsBatch(batchSize);
+		}
+	}
+
 	StringBuilder sb = new StringBuilder();
 
 	public String toString(long savingCounter) {
@@ -50,7 +212,7 @@ public class NeuralNetwork {
 			Layer l = layers[i];
 			for (int j = 0; j < l.numberOfOutputs; j++) {
 				for (int k = 0; k < l.numberOfInputs; k++) {
-					sb.append(l.weights[j][k]).append(',');
+					sb.append(l.weights[j * l.numberOfInputs + k]).append(',');
 				}
 				sb.append('\n');
 			}
@@ -76,7 +238,7 @@ public class NeuralNetwork {
 						for (int x = 0; x < numOuts; x++) {
 							Float[] we = ws.pop();
 							for (int y = 0; y < numIns; y++) {
-								l.weights[x][y] = we[y];
+								l.weights[x * numIns + y] = we[y];
 							}
 						}
 						ls.add(l);
@@ -110,7 +272,12 @@ public class NeuralNetwork {
 		int numberOfInputs, numberOfOutputs;
 
 		float[] inputs, outputs, gamma, error;
-		float[][] weights, weightsDelta;
+		// Row-major, one row of numberOfInputs weights per output
+		float[] weights;
+		Activation activation = Activation.TANH;
+
+		float[] batchInputs, batchOutputs, batchGamma, gradient;
+		int batchCapacity = 0;
 
 		public Layer(int numInputs, int numOutputs) {
 			this.numberOfInputs = numInputs;
@@ -118,8 +285,7 @@ public class NeuralNetwork {
 
 			inputs = new float[numInputs];
 			outputs = new float[numOutputs];
-			weights = new float[numOutputs][numInputs];
-			weightsDelta = new float[numOutputs][numInputs];
+			weights = new float[numOutputs * numInputs];
 			gamma = new float[numberOfOutputs];
 			error = new float[numberOfOutputs];
 
@@ -127,67 +293,88 @@ public class NeuralNetwork {
 		}
 
 		private void initWeights() {
-			for (int i = 0; i < numberOfOutputs; i++) {
-				for (int j = 0; j < numberOfInputs; j++) {
-					weights[i][j] = random.nextFloat() - 0.5f;
-				}
+			for (int i = 0; i < weights.length; i++) {
+				weights[i] = random.nextFloat() - 0.5f;
 			}
 		}
 
 		public float[] feedForward(float[] input) {
 			inputs = input;
-			for (int i = 0; i < numberOfOutputs; i++) {
-				outputs[i] = 0;
-				for (int j = 0; j < numberOfInputs; j++) {
-					outputs[i] += inputs[j] * weights[i][j];
-				}
-				outputs[i] = (float) Math.tanh(outputs[i]);
-			}
+			Kernel.multiply(weights, numberOfOutputs, numberOfInputs, input, outputs);
+			activation.apply(outputs, 0, numberOfOutputs);
 			return outputs;
 		}
 
-		public float tanHDer(float value) {
-			return 1 - (value * value);
-		}
-
 		public void backPropOutput(float[] expected) {
 			for (int i = 0; i < numberOfOutputs; i++) {
 				error[i] = outputs[i] - expected[i];
 			}
 
 			for (int i = 0; i < numberOfOutputs; i++) {
-				gamma[i] = error[i] * tanHDer(outputs[i]);
-			}
-
-			for (int i = 0; i < numberOfOutputs; i++) {
-				for (int j = 0; j < numberOfInputs; j++) {
-					weightsDelta[i][j] = gamma[i] * inputs[j];
-				}
+				gamma[i] = error[i] * activation.derivative(outputs[i]);
 			}
 		}
 
-		public void backPropHidden(float[] gammaForward, float[][] weightsForward) {
+		public void backPropHidden(float[] gammaForward, float[] weightsForward) {
+			// Walks the forward weights row by row instead of down the columns
 			for (int i = 0; i < numberOfOutputs; i++) {
 				gamma[i] = 0;
-				for (int j = 0; j < gammaForward.length; j++) {
-					gamma[i] += gammaForward[j] * weightsForward[j][i];
-				}
-				gamma[i] *= tanHDer(outputs[i]);
 			}
-
+			for (int j = 0; j < gammaForward.length; j++) {
+				Kernel.axpy(gammaForward[j], weightsForward, j * numberOfOutputs, gamma, 0, numberOfOutputs);
+			}
 			for (int i = 0; i < numberOfOutputs; i++) {
-				for (int j = 0; j < numberOfInputs; j++) {
-					weightsDelta[i][j] = gamma[i] * inputs[j];
-				}
+				gamma[i] *= activation.derivative(outputs[i]);
 			}
 		}
 
 		public void updateWeights() {
+			// The delta of row i is gamma[i] * inputs, applied without storing it
 			for (int i = 0; i < numberOfOutputs; i++) {
-				for (int j = 0; j < numberOfInputs; j++) {
-					weights[i][j] -= weightsDelta[i][j] * learningRate;
-				}
+				Kernel.axpy(-learningRate * gamma[i], inputs, 0, weights, i * numberOfInputs, numberOfInputs);
+			}
+		}
+
+		private void ensureBatchCapacity(int batchSize) {
+			if (batchSize > batchCapacity) {
+				batchOutputs = new float[batchSize * numberOfOutputs];
+				batchGamma = new float[batchSize * numberOfOutputs];
+				batchCapacity = batchSize;
 			}
+			if (gradient == null) {
+				gradient = new float[weights.length];
+			}
+		}
+
+		public float[] feedForwardBatch(float[] input, int batchSize) {
+			ensureBatchCapacity(batchSize);
+			batchInputs = input;
+			Kernel.multiplyBatch(weights, numberOfOutputs, numberOfInputs, input, batchSize, batchOutputs);
+			activation.apply(batchOutputs, 0, batchSize * numberOfOutputs);
+			return batchOutputs;
+		}
+
+		public void backPropOutputBatch(float[] expected, int batchSize) {
+			int n = batchSize * numberOfOutputs;
+			for (int i = 0; i < n; i++) {
+				batchGamma[i] = (batchOutputs[i] - expected[i]) * activation.derivative(batchOutputs[i]);
+			}
+		}
+
+		public void backPropHiddenBatch(float[] gammaForward, float[] weightsForward, int forwardOutputs,
+				int batchSize) {
+			int n = batchSize * numberOfOutputs;
+			Kernel.multiplyBatchTransposed(gammaForward, batchSize, forwardOutputs, weightsForward, numberOfOutputs,
+					batchGamma);
+			for (int i = 0; i < n; i++) {
+				batchGamma[i] *= activation.derivative(batchOutputs[i]);
+			}
+		}
+
+		public void updateWeightsBatch(int batchSize) {
+			Kernel.multiplyTransposedBatch(batchGamma, numberOfOutputs, batchInputs, numberOfInputs, batchSize,
+					gradient);
+			Kernel.axpy(-learningRate / batchSize, gradient, 0, weights, 0, weights.length);
 		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,251 @@
+package ai;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+
+/**
+ * int8 copy of a trained network, for driving only. Every layer keeps its
+ * weights as bytes with one scale per layer, activations between layers are
+ * bytes too with 127 standing for 1. The sums are accumulated in ints and
+ * the hidden activations come from a table per layer, only the outputs are
+ * computed in float. That needs activations bounded to [-1, 1]. Immutable,
+ * so it is thread-safe like WeightSnapshot with one workspace per thread.
+ *
+ * File layout, little-endian:
+ *
+ * <pre>
+ * int     magic "AIQ8"
+ * int     version
+ * int     number of topology entries n
+ * int[n]  topology
+ * per layer:
+ * int     activation (ordinal of Activation, since version 2)
+ * float   scale
+ * byte[]  weights, row-major
+ * </pre>
+ */
+public class QuantizedNetwork {
+	public final static String extension = ".nnq";
+	final static int magic = 'A' | 'I' << 8 | 'Q' << 16 | '8' << 24;
+	final static int version = 2;
+	final static float activationScale = 127;
+	// tanh is saturated to 127 beyond |x| = 4, 1/256 steps keep the table within half a step
+	final static int tableSteps = 256;
+	final static int tableOffset = 4 * tableSteps;
+	final static byte[][] tables = new byte[Activation.values().length][];
+
+	static {
+		for (Activation a : Activation.values()) {
+			if (a.isBounded()) {
+				byte[] table = new byte[2 * tableOffset + 1];
+				for (int i = 0; i < table.length; i++) {
+					table[i] = (byte) Math.round(activationScale * a.apply((i - tableOffset) / (float) tableSteps));
+				}
+				tables[a.ordinal()] = table;
+			}
+		}
+	}
+
+	final int[] topology;
+	final Activation[] activations;
+	final byte[][] weights;
+	final float[] scales;
+	// Turns an int sum back into the float pre-activation
+	final float[] multipliers;
+
+	/**
+	 * Quantizes nn. Throws IllegalArgumentException if a layer uses an
+	 * activation that isn't bounded to [-1, 1].
+	 */
+	public QuantizedNetwork(NeuralNetwork nn) {
+		topology = nn.getTopology();
+		activations = nn.getActivations();
+		for (Activation a : activations) {
+			if (!a.isBounded()) {
+				throw new IllegalArgumentException(a + " can't be quantized, its outputs exceed [-1, 1]");
+			}
+		}
+		weights = new byte[nn.layers.length][];
+		scales = new float[weights.length];
+		for (int l = 0; l < weights.length; l++) {
+			float[] w = nn.layers[l].weights;
+			float max = 0;
+			for (float v : w) {
+				max = Math.max(max, Math.abs(v));
+			}
+			scales[l] = max > 0 ? max / 127f : 1;
+			weights[l] = new byte[w.length];
+			for (int i = 0; i < w.length; i++) {
+				weights[l][i] = (byte) Math.round(w[i] / scales[l]);
+			}
+		}
+		multipliers = multipliers(scales);
+	}
+
+	QuantizedNetwork(int[] topology, Activation[] activations, byte[][] weights, float[] scales) {
+		this.topology = topology;
+		this.activations = activations;
+		this.weights = weights;
+		this.scales = scales;
+		multipliers = multipliers(scales);
+	}
+
+	private static float[] multipliers(float[] scales) {
+		float[] m = new float[scales.length];
+		for (int l = 0; l < m.length; l++) {
+			m[l] = scales[l] / activationScale;
+		}
+		return m;
+	}
+
+	/**
+	 * Quantized activations of one thread.
+	 */
+	public static final class Workspace {
+		final byte[] a, b;
+
+		public Workspace(int[] topology) {
+			int width = Inference.maxWidth(topology);
+			a = new byte[width];
+			b = new byte[width];
+		}
+	}
+
+	public Workspace createWorkspace() {
+		return new Workspace(topology);
+	}
+
+	/**
+	 * Forward pass on input, which is expected within [-1, 1] like the
+	 * normalized sensor values, clamped otherwise. Writes the outputs into
+	 * output and returns it.
+	 */
+	public float[] infer(float[] input, Workspace ws, float[] output) {
+		byte[] in = ws.a;
+		for (int i = 0; i < topology[0]; i++) {
+			float v = Math.max(-1, Math.min(1, input[i]));
+			in[i] = (byte) Math.round(v * activationScale);
+		}
+		int last = weights.length - 1;
+		for (int l = 0; l < last; l++) {
+			byte[] out = (l & 1) == 0 ? ws.b : ws.a;
+			byte[] w = weights[l];
+			int numberOfInputs = topology[l];
+			float m = multipliers[l];
+			byte[] table = tables[activations[l].ordinal()];
+			for (int i = 0; i < topology[l + 1]; i++) {
+				out[i] = lookup(table, dot(w, i * numberOfInputs, in, numberOfInputs) * m);
+			}
+			in = out;
+		}
+		byte[] w = weights[last];
+		int numberOfInputs = topology[last];
+		float m = multipliers[last];
+		for (int i = 0; i < topology[last + 1]; i++) {
+			output[i] = dot(w, i * numberOfInputs, in, numberOfInputs) * m;
+		}
+		activations[last].apply(output, 0, topology[last + 1]);
+		return output;
+	}
+
+	static int dot(byte[] w, int offset, byte[] x, int length) {
+		int s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+		int i = 0;
+		int bound = length & ~3;
+		for (; i < bound; i += 4) {
+			s0 += w[offset + i] * x[i];
+			s1 += w[offset + i + 1] * x[i + 1];
+			s2 += w[offset + i + 2] * x[i + 2];
+			s3 += w[offset + i + 3] * x[i + 3];
+		}
+		for (; i < length; i++) {
+			s0 += w[offset + i] * x[i];
+		}
+		return (s0 + s1) + (s2 + s3);
+	}
+
+	static byte lookup(byte[] table, float x) {
+		int i = (int) (x * tableSteps + (tableOffset + 0.5f));
+		if (i < 0) {
+			i = 0;
+		} else if (i >= table.length) {
+			i = table.length - 1;
+		}
+		return table[i];
+	}
+
+	public int[] getTopology() {
+		return topology.clone();
+	}
+
+	public static void write(QuantizedNetwork qn, File file) throws IOException {
+		int size = 4 + 4 + 4 + 4 * qn.topology.length;
+		for (byte[] w : qn.weights) {
+			size += 8 + w.length;
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(magic);
+		buffer.putInt(version);
+		buffer.putInt(qn.topology.length);
+		for (int t : qn.topology) {
+			buffer.putInt(t);
+		}
+		for (int l = 0; l < qn.weights.length; l++) {
+			buffer.putInt(qn.activations[l].ordinal());
+			buffer.putFloat(qn.scales[l]);
+			buffer.put(qn.weights[l]);
+		}
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(buffer.array());
+		} finally {
+			out.close();
+		}
+	}
+
+	public static QuantizedNetwork read(File file) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+		if (buffer.remaining() < 12 || buffer.getInt() != magic) {
+			throw new IOException("Not a quantized network file: " + file);
+		}
+		int fileVersion = buffer.getInt();
+		if (fileVersion < 1 || fileVersion > version) {
+			throw new IOException("Unsupported quantized network file version " + fileVersion + ": " + file);
+		}
+		int entries = buffer.getInt();
+		if (entries < 2) {
+			throw new IOException("Invalid topology length " + entries + " in quantized network file: " + file);
+		}
+		if (buffer.remaining() < 4L * entries) {
+			throw new IOException("Truncated quantized network file: " + file);
+		}
+		int[] topology = new int[entries];
+		for (int i = 0; i < topology.length; i++) {
+			topology[i] = buffer.getInt();
+			if (topology[i] <= 0) {
+				throw new IOException("Invalid layer size " + topology[i] + " in quantized network file: " + file);
+			}
+		}
+		byte[][] weights = new byte[topology.length - 1][];
+		Activation[] activations = new Activation[weights.length];
+		float[] scales = new float[weights.length];
+		for (int l = 0; l < weights.length; l++) {
+			long count = (long) topology[l] * topology[l + 1];
+			if (buffer.remaining() < (fileVersion >= 2 ? 8 : 4) + count) {
+				throw new IOException("Truncated quantized network file: " + file);
+			}
+			activations[l] = Activation.TANH;
+			if (fileVersion >= 2) {
+				activations[l] = Activation.read(buffer.getInt(), file);
+			}
+			scales[l] = buffer.getFloat();
+			weights[l] = new byte[(int) count];
+			buffer.get(weights[l]);
+		}
+		return new QuantizedNetwork(topology, activations, weights, scales);
+	}
+}
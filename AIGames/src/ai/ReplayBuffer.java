@@ -0,0 +1,149 @@
+package ai;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+/**
+ * Bounded store of training samples (inputs, expected outputs, score) in one
+ * off-heap block with a fixed stride per sample. Once full, new samples either
+ * replace the oldest one (FIFO) or a random one with the probability of
+ * reservoir sampling, which keeps a uniform sample of everything seen so far.
+ *
+ * One producer thread adds and one trainer thread samples, neither takes a
+ * lock. A sample is published by raising size after it is written. Each side
+ * announces the slot it works on and then checks the other's, so the
+ * producer never overwrites a slot while it is copied: it waits for the few
+ * nanoseconds of the copy, the trainer picks another slot. Samples are drawn
+ * with a probability proportional to their score, by rejection against the
+ * largest score seen.
+ */
+public class ReplayBuffer {
+	public enum Eviction {
+		FIFO, RESERVOIR
+	}
+
+	// Rejected draws per sample before one is taken regardless of its score
+	final static int maxAttempts = 8;
+
+	final int inputs, outputs, stride, capacity;
+	final Eviction eviction;
+	final FloatBuffer data;
+	// Producer only
+	final Random random = new Random();
+	int next = 0;
+
+	// Written by the producer only
+	volatile int size = 0;
+	volatile long seen = 0;
+	volatile float maxScore = 0;
+	// Slot each side is working on, -1 for none
+	volatile int writing = -1, reading = -1;
+
+	public ReplayBuffer(int capacity, int inputs, int outputs, Eviction eviction) {
+		this.capacity = capacity;
+		this.inputs = inputs;
+		this.outputs = outputs;
+		this.stride = inputs + outputs + 1;
+		this.eviction = eviction;
+		data = ByteBuffer.allocateDirect(capacity * stride * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+	}
+
+	/**
+	 * Stores a sample. Only the producer thread may call this.
+	 */
+	public void add(float[] in, float[] expected, float score) {
+		long s = seen + 1;
+		seen = s;
+		int currentSize = size;
+		int slot;
+		if (currentSize < capacity) {
+			slot = currentSize;
+		} else if (eviction == Eviction.FIFO) {
+			slot = next;
+			next = (next + 1) % capacity;
+		} else {
+			long r = (long) (random.nextDouble() * s);
+			if (r >= capacity) {
+				return;
+			}
+			slot = (int) r;
+		}
+		writing = slot;
+		while (reading == slot) {
+			Thread.yield();
+		}
+		int offset = slot * stride;
+		for (int i = 0; i < inputs; i++) {
+			data.put(offset + i, in[i]);
+		}
+		offset += inputs;
+		for (int i = 0; i < outputs; i++) {
+			data.put(offset + i, expected[i]);
+		}
+		data.put(offset + outputs, score);
+		writing = -1;
+		if (score > maxScore) {
+			maxScore = score;
+		}
+		if (slot == currentSize) {
+			size = currentSize + 1;
+		}
+	}
+
+	/**
+	 * Copies up to batchSize samples, drawn by score, into batchInputs and
+	 * batchExpected, row after row, and their scores into scores unless it is
+	 * null. Returns the number of samples copied. Only the trainer thread may
+	 * call this.
+	 */
+	public int sample(float[] batchInputs, float[] batchExpected, float[] scores, int batchSize, Random random) {
+		int available = size;
+		float max = maxScore;
+		int count = Math.min(batchSize, available);
+		for (int b = 0; b < count; b++) {
+			int attempts = 0;
+			while (true) {
+				int slot = random.nextInt(available);
+				reading = slot;
+				if (writing == slot) {
+					reading = -1;
+					Thread.yield();
+					continue;
+				}
+				int offset = slot * stride;
+				float score = data.get(offset + inputs + outputs);
+				if (++attempts < maxAttempts && score < random.nextFloat() * max) {
+					reading = -1;
+					continue;
+				}
+				for (int i = 0; i < inputs; i++) {
+					batchInputs[b * inputs + i] = data.get(offset + i);
+				}
+				offset += inputs;
+				for (int i = 0; i < outputs; i++) {
+					batchExpected[b * outputs + i] = data.get(offset + i);
+				}
+				if (scores != null) {
+					scores[b] = score;
+				}
+				reading = -1;
+				break;
+			}
+		}
+		return count;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public long getSeen() {
+		return seen;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+}
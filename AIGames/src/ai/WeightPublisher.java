@@ -0,0 +1,41 @@
+package ai;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hands the weights of a network that is trained on one thread to networks
+ * that only run inference on other threads. The trainer publishes a fresh
+ * immutable snapshot, readers swap to the newest one whenever they like.
+ * Neither side ever takes a lock or sees a half updated network.
+ */
+public class WeightPublisher {
+	final AtomicReference<WeightSnapshot> current;
+
+	public WeightPublisher(NeuralNetwork initial) {
+		current = new AtomicReference<WeightSnapshot>(new WeightSnapshot(initial, 0));
+	}
+
+	/**
+	 * Publishes a snapshot of the current weights of nn. Only the training
+	 * thread may call this.
+	 */
+	public void publish(NeuralNetwork nn) {
+		current.set(new WeightSnapshot(nn, current.get().version + 1));
+	}
+
+	public WeightSnapshot get() {
+		return current.get();
+	}
+
+	/**
+	 * Copies the newest snapshot into target if it is newer than knownVersion.
+	 * Returns the version target holds now.
+	 */
+	public long sync(NeuralNetwork target, long knownVersion) {
+		WeightSnapshot snapshot = current.get();
+		if (snapshot.version != knownVersion) {
+			snapshot.copyTo(target);
+		}
+		return snapshot.version;
+	}
+}
@@ -0,0 +1,62 @@
+package ai;
+
+/**
+ * Immutable copy of the weights of a network. Once published it is never
+ * written again, so any number of threads can read it without locking.
+ */
+public final class WeightSnapshot {
+	final int[] topology;
+	final float[][] weights;
+	final Activation[] activations;
+	final long version;
+
+	public WeightSnapshot(NeuralNetwork nn, long version) {
+		this.version = version;
+		topology = nn.getTopology();
+		activations = nn.getActivations();
+		weights = new float[nn.layers.length][];
+		for (int i = 0; i < weights.length; i++) {
+			weights[i] = nn.layers[i].weights.clone();
+		}
+	}
+
+	/**
+	 * Copies the weights and activations into target, which needs the same
+	 * topology.
+	 */
+	public void copyTo(NeuralNetwork target) {
+		for (int i = 0; i < weights.length; i++) {
+			System.arraycopy(weights[i], 0, target.layers[i].weights, 0, weights[i].length);
+			target.layers[i].activation = activations[i];
+		}
+	}
+
+	/**
+	 * Forward pass on the snapshot weights. A snapshot never changes, so any
+	 * number of threads can call this at once, each with its own workspace.
+	 * Returns output.
+	 */
+	public float[] infer(float[] input, Inference.Workspace ws, float[] output) {
+		return Inference.run(weights, topology, activations, input, ws, output);
+	}
+
+	/**
+	 * Forward pass for cars cars at once, see BatchInference for the matrix
+	 * layout. Thread-safe like infer.
+	 */
+	public void inferBatch(float[] inputs, int cars, float[] outputs, BatchInference.Workspace ws) {
+		BatchInference.run(weights, topology, activations, inputs, cars, outputs, ws);
+	}
+
+	public Inference.Workspace createWorkspace() {
+		return new Inference.Workspace(topology);
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	public int[] getTopology() {
+		return topology.clone();
+	}
+}
@@ -0,0 +1,120 @@
+package cars;
+
+/**
+ * Sequence of car actions, 4 bits each (up, down, left, right), packed 16 to
+ * a long in a ring buffer. Appending, indexed reads and dropping from either
+ * end are O(1), the buffer doubles when full. A timeline can be forked into
+ * another trace and rewound to an earlier length without any allocation.
+ */
+public class ActionTrace {
+	public final static int up = 1, down = 2, left = 4, right = 8;
+
+	long[] words;
+	int mask;
+	int head = 0;
+	int length = 0;
+
+	public ActionTrace(int capacity) {
+		int actions = 16;
+		while (actions < capacity) {
+			actions <<= 1;
+		}
+		words = new long[actions >>> 4];
+		mask = actions - 1;
+	}
+
+	public static int pack(boolean up, boolean down, boolean left, boolean right) {
+		return (up ? ActionTrace.up : 0) | (down ? ActionTrace.down : 0) | (left ? ActionTrace.left : 0)
+				| (right ? ActionTrace.right : 0);
+	}
+
+	public void append(int action) {
+		if (length > mask) {
+			grow(length + 1);
+		}
+		set((head + length) & mask, action);
+		length++;
+	}
+
+	public void append(boolean up, boolean down, boolean left, boolean right) {
+		append(pack(up, down, left, right));
+	}
+
+	/**
+	 * Action number index, counted from the oldest one still in the trace.
+	 */
+	public int get(int index) {
+		int position = (head + index) & mask;
+		return (int) (words[position >>> 4] >>> ((position & 15) << 2)) & 15;
+	}
+
+	public int removeFirst() {
+		int action = get(0);
+		head = (head + 1) & mask;
+		length--;
+		return action;
+	}
+
+	public int length() {
+		return length;
+	}
+
+	public void clear() {
+		head = 0;
+		length = 0;
+	}
+
+	/**
+	 * Drops everything after the first length actions, e.g. to go back to a
+	 * length remembered at a split.
+	 */
+	public void rewind(int length) {
+		if (length < this.length) {
+			this.length = length;
+		}
+	}
+
+	/**
+	 * Makes target a copy of this trace, reusing its buffer if it is large
+	 * enough.
+	 */
+	public void copyTo(ActionTrace target) {
+		if (target.words.length < words.length) {
+			target.words = new long[words.length];
+			target.mask = mask;
+		} else if (target.words.length > words.length) {
+			// Keep the larger buffer, the ring positions have to be redone
+			target.clear();
+			for (int i = 0; i < length; i++) {
+				target.set(i, get(i));
+			}
+			target.length = length;
+			return;
+		}
+		System.arraycopy(words, 0, target.words, 0, words.length);
+		target.head = head;
+		target.length = length;
+	}
+
+	public ActionTrace fork() {
+		ActionTrace trace = new ActionTrace(mask + 1);
+		copyTo(trace);
+		return trace;
+	}
+
+	private void set(int position, int action) {
+		int word = position >>> 4;
+		int shift = (position & 15) << 2;
+		words[word] = (words[word] & ~(15L << shift)) | ((long) action << shift);
+	}
+
+	private void grow(int capacity) {
+		ActionTrace larger = new ActionTrace(capacity);
+		for (int i = 0; i < length; i++) {
+			larger.set(i, get(i));
+		}
+		words = larger.words;
+		mask = larger.mask;
+		head = 0;
+	}
+}
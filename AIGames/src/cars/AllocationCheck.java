@@ -0,0 +1,152 @@
+package cars;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import vector.Vector2f;
+
+/**
+ * Drives the car around the default track with the same random inputs twice,
+ * once with the SupportResults rings and once with a fresh vector for every
+ * support point, the allocation the rings replace, and measures the bytes
+ * allocated per space.update(16) in both runs. Checks that the rings
+ * allocate less than the fresh vectors, that the car and wall support
+ * mapping allocates nothing and that both runs, wall contacts included, end
+ * up identical: if GJK, EPA or the manifold manager held more ring vectors
+ * than there are, the contacts and with them the trajectory would differ.
+ * Exits with status 1 on a regression so it can run as a build step.
+ *
+ * Arguments: [max bytes per space.update with the rings, no limit by default]
+ */
+public class AllocationCheck {
+	final static int warmupTicks = 20000;
+	final static int ticks = 50000;
+	final static int supportCalls = 1000000;
+	final static int compareTicks = 20000;
+	final static int stateSize = 6;
+
+	/**
+	 * A new vector for every support point, the reference the rings are
+	 * compared against.
+	 */
+	static class FreshResults extends SupportResults {
+		@Override
+		Vector2f next() {
+			return new Vector2f();
+		}
+	}
+
+	static com.sun.management.ThreadMXBean threads;
+
+	public static void main(String[] args) {
+		long maxBytesPerUpdate = args.length > 0 ? Long.parseLong(args[0]) : Long.MAX_VALUE;
+		threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		threads.setThreadAllocatedMemoryEnabled(true);
+		long thread = Thread.currentThread().getId();
+
+		long[] ringBytes = new long[1];
+		long[] freshBytes = new long[1];
+		float[] ring = drive(false, ringBytes);
+		float[] fresh = drive(true, freshBytes);
+		float ringPerUpdate = ringBytes[0] / (float) ticks;
+		float freshPerUpdate = freshBytes[0] / (float) ticks;
+		System.out.println("space.update(16): " + ringPerUpdate + " bytes with support rings, " + freshPerUpdate
+				+ " with fresh vectors");
+
+		int diverged = -1;
+		for (int i = 0; i < ring.length && diverged < 0; i++) {
+			if (Float.floatToIntBits(ring[i]) != Float.floatToIntBits(fresh[i])) {
+				diverged = i / stateSize;
+			}
+		}
+		System.out.println("Support rings against fresh vectors: "
+				+ (diverged < 0 ? "identical over " + compareTicks + " ticks" : "diverged at tick " + diverged));
+
+		Simulation sim = new Simulation(null, false);
+		Vector2f direction = new Vector2f();
+		Wall wall = sim.walls.get(0);
+		long supportBytes = 0;
+		for (int pass = 0; pass < 2; pass++) {
+			long before = threads.getThreadAllocatedBytes(thread);
+			for (int i = 0; i < supportCalls; i++) {
+				direction.set((float) Math.cos(i), (float) Math.sin(i));
+				sim.car.getBody().supportPointLocal(direction);
+				wall.getBody().supportPointLocal(direction);
+			}
+			// The first pass warms up the JIT
+			supportBytes = threads.getThreadAllocatedBytes(thread) - before;
+		}
+		sim.close();
+		System.out.println("Support mapping: " + (supportBytes / (2f * supportCalls)) + " bytes per call");
+
+		boolean failed = false;
+		if (diverged >= 0) {
+			System.out.println("FAIL: the engine holds more than " + SupportResults.size + " support results");
+			failed = true;
+		}
+		if (supportBytes > 0) {
+			System.out.println("FAIL: support mapping allocates");
+			failed = true;
+		}
+		if (ringBytes[0] >= freshBytes[0]) {
+			System.out.println("FAIL: the support rings don't allocate less than fresh vectors");
+			failed = true;
+		}
+		if (ringPerUpdate > maxBytesPerUpdate) {
+			System.out.println("FAIL: more than " + maxBytesPerUpdate + " bytes per space.update");
+			failed = true;
+		}
+		if (failed) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Drives a fixed random sequence of inputs, with fresh support results on
+	 * the car and every wall if fresh is set. Adds the bytes allocated by
+	 * space.update after the warmup to updateBytes[0] and returns pose and
+	 * velocity of the car after each of the first compareTicks ticks.
+	 */
+	static float[] drive(boolean fresh, long[] updateBytes) {
+		long thread = Thread.currentThread().getId();
+		Simulation sim = new Simulation(null, false);
+		if (fresh) {
+			sim.car.supportResults = new FreshResults();
+			for (Wall w : sim.walls) {
+				w.supportResults = new FreshResults();
+			}
+		}
+		Random random = new Random(1);
+		boolean up = true, down = false, left = false, right = false;
+		float[] states = new float[compareTicks * stateSize];
+		for (int t = 0; t < warmupTicks + ticks; t++) {
+			if (t % 30 == 0) {
+				up = random.nextInt(4) != 0;
+				down = !up;
+				left = random.nextBoolean();
+				right = !left && random.nextBoolean();
+			}
+			sim.car.update();
+			sim.passCarInputs(up, down, left, right);
+			long before = threads.getThreadAllocatedBytes(thread);
+			sim.space.update(Simulation.tickLength);
+			long after = threads.getThreadAllocatedBytes(thread);
+			if (t >= warmupTicks) {
+				updateBytes[0] += after - before;
+			}
+			if (t < compareTicks) {
+				Vector2f position = sim.car.getTranslation();
+				Vector2f velocity = sim.car.getBody().getLinearVelocity();
+				int o = t * stateSize;
+				states[o] = position.x;
+				states[o + 1] = position.y;
+				states[o + 2] = sim.car.getRotation().getRealf();
+				states[o + 3] = sim.car.getRotation().getImaginaryf();
+				states[o + 4] = velocity.x;
+				states[o + 5] = velocity.y;
+			}
+		}
+		sim.close();
+		return states;
+	}
+}
@@ -0,0 +1,33 @@
+package cars;
+
+public class BenchmarkScaling {
+	final static long warmupMillis = 3000;
+	final static long measureMillis = 10000;
+
+	public static void main(String[] args) throws InterruptedException {
+		int maxWorkers = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+		float singleWorkerTicks = 0;
+		for (int workers = 1; workers <= maxWorkers; workers *= 2) {
+			ParallelTrainer trainer = new ParallelTrainer(null, workers);
+			trainer.start();
+			Thread.sleep(warmupMillis);
+			long startTicks = trainer.getTicks();
+			long start = System.nanoTime();
+			Thread.sleep(measureMillis);
+			long ticks = trainer.getTicks() - startTicks;
+			long time = System.nanoTime() - start;
+			trainer.stop();
+
+			float ticksPerSecond = ticks * 1000000000f / time;
+			if (workers == 1) {
+				singleWorkerTicks = ticksPerSecond;
+			}
+			float speedup = ticksPerSecond / singleWorkerTicks;
+			System.out.println(workers + " workers: " + ticksPerSecond + " ticks/s, speedup " + speedup
+					+ ", efficiency " + (speedup / workers));
+			if (workers < maxWorkers && workers * 2 > maxWorkers) {
+				workers = maxWorkers / 2;
+			}
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package cars;
+
+/**
+ * Compares the sensor caster with space.raycast while a random network drives
+ * the car around the default track.
+ */
+public class BenchmarkSensors {
+	final static int ticks = 20000;
+	final static int repetitions = 20;
+	final static float tolerance = 0.01f;
+
+	public static void main(String[] args) {
+		Simulation sim = new Simulation(null, false);
+		sim.mode = 2;
+		float[] spaceDistances = new float[Simulation.numRaycasts];
+		float maxDifference = 0;
+		int mismatches = 0;
+		long spaceTime = 0, casterTime = 0;
+		for (int t = 0; t < ticks; t++) {
+			sim.update(Simulation.tickLength);
+			if (sim.errorstop) {
+				sim.errorstop = false;
+				sim.mode = 2;
+			}
+
+			sim.useSensorCaster = false;
+			long start = System.nanoTime();
+			for (int r = 0; r < repetitions; r++) {
+				sim.doRaycasts(sim.car);
+			}
+			spaceTime += System.nanoTime() - start;
+			System.arraycopy(sim.raycastDistances, 0, spaceDistances, 0, spaceDistances.length);
+
+			sim.useSensorCaster = true;
+			start = System.nanoTime();
+			for (int r = 0; r < repetitions; r++) {
+				sim.doRaycasts(sim.car);
+			}
+			casterTime += System.nanoTime() - start;
+
+			for (int i = 0; i < spaceDistances.length; i++) {
+				float difference = Math.abs(spaceDistances[i] - sim.raycastDistances[i]);
+				maxDifference = Math.max(maxDifference, difference);
+				if (difference > tolerance * Math.max(1, spaceDistances[i])) {
+					mismatches++;
+				}
+			}
+		}
+		float passes = ticks * (float) repetitions;
+		System.out.println("space.raycast: " + (spaceTime / passes) + " ns per 10 rays");
+		System.out.println("SensorCaster:  " + (casterTime / passes) + " ns per 10 rays ("
+				+ (spaceTime / (float) casterTime) + "x)");
+		System.out.println("Max difference: " + maxDifference + ", rays out of tolerance: " + mismatches + " of "
+				+ (ticks * Simulation.numRaycasts));
+	}
+}
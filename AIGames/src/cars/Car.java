@@ -3,14 +3,17 @@ package cars;
 import math.VecMath;
 import matrix.Matrix1f;
 import matrix.Matrix2;
+import objects.CollisionShape;
+import objects.CollisionShape2;
 import objects.Ray2;
 import objects.RigidBody2;
-import physics.PhysicsShapeCreator;
+import objects.ShapedObject2;
+import objects.SupportCalculator;
 import quaternion.Complexf;
-import shape2d.Quad;
+import utils.GLConstants;
 import vector.Vector2f;
 
-public class Car extends Quad {
+public class Car extends ShapedObject2 {
 	RigidBody2 body;
 	Vector2f initialdirection, tmpvelocity;
 	public Vector2f direction;
@@ -22,13 +25,30 @@ public class Car extends Quad {
 	final float speedscale = speed * speed;
 	final float forwarddamping = 0.25f;
 	final float backwarddamping = 0.5f;
+	float lineardamping = forwarddamping;
 
 	public Ray2[] rays;
 	public Vector2f[] raystartpoints;
+	// Where the support calculator takes its result vectors from
+	SupportResults supportResults = new SupportResults();
 
 	public Car(float x, float y, int numrays) {
-		super(x, y, halflength, halfwidth);
-		body = new RigidBody2(PhysicsShapeCreator.create(this));
+		this(x, y, numrays, true);
+	}
+
+	public Car(float x, float y, int numrays, boolean render) {
+		translateTo(new Vector2f(x, y));
+		addVertex(new Vector2f(-halflength, -halfwidth));
+		addVertex(new Vector2f(halflength, -halfwidth));
+		addVertex(new Vector2f(halflength, halfwidth));
+		addVertex(new Vector2f(-halflength, halfwidth));
+		setRenderMode(GLConstants.TRIANGLE_ADJACENCY);
+		addQuad(0, 0, 1, 1, 2, 2, 3, 3);
+		if (render) {
+			this.prerender();
+		}
+
+		body = new RigidBody2(new CarShape(x, y));
 		body.setMass(1f);
 		body.setInertia(new Matrix1f());
 		body.setLinearDamping(forwarddamping);
@@ -44,7 +64,7 @@ public class Car extends Quad {
 		Vector2f dir = new Vector2f(1, 0);
 		for (int i = 0; i < numrays; i++) {
 			rays[i] = new Ray2(new Vector2f(), new Vector2f());
-			raystartpoints[i] = body.supportPointLocal(dir);
+			raystartpoints[i] = new Vector2f(body.supportPointLocal(dir));
 			raystartpoints[i].scale(0.5f);
 			dir.transform(rayrotation);
 		}
@@ -67,14 +87,19 @@ public class Car extends Quad {
 		body.getLinearVelocity().scale(veldot / speedscale);
 	}
 
+	public void setLinearDamping(float damping) {
+		lineardamping = damping;
+		body.setLinearDamping(damping);
+	}
+
 	public void accelerate() {
-		body.setLinearDamping(forwarddamping);
+		setLinearDamping(forwarddamping);
 		body.applyCentralForce(tmpvelocity);
 	}
 
 	public void brake() {
 		tmpvelocity.negate();
-		body.setLinearDamping(backwarddamping);
+		setLinearDamping(backwarddamping);
 		body.applyCentralForce(tmpvelocity);
 		tmpvelocity.negate();
 	}
@@ -88,4 +113,51 @@ public class Car extends Quad {
 		float factor = forward ? 1 : -1;
 		body.applyTorque(factor * (float) Math.sqrt(body.getLinearVelocity().length()) * 15);
 	}
+
+	private class CarShape extends CollisionShape2 {
+		CarShape(float x, float y) {
+			super();
+			translate(x, y);
+			// Rotation invariant bounds, the car turns freely
+			float radius = (float) Math.sqrt(halflength * halflength + halfwidth * halfwidth);
+			setAABB(new Vector2f(-radius, -radius), new Vector2f(radius, radius));
+			supportcalculator = createSupportCalculator(this);
+		}
+
+		@Override
+		public SupportCalculator<Vector2f> createSupportCalculator(CollisionShape<Vector2f, Complexf, Matrix1f> cs) {
+			return new CarSupport();
+		}
+	}
+
+	/**
+	 * Support points of the car box from a SupportResults ring, like the
+	 * walls.
+	 */
+	private class CarSupport implements SupportCalculator<Vector2f> {
+		public Vector2f supportPointLocal(Vector2f direction, Vector2f result) {
+			result.set(direction.x >= 0 ? halflength : -halflength, direction.y >= 0 ? halfwidth : -halfwidth);
+			return result;
+		}
+
+		public Vector2f supportPointLocalNegative(Vector2f direction, Vector2f result) {
+			result.set(direction.x < 0 ? halflength : -halflength, direction.y < 0 ? halfwidth : -halfwidth);
+			return result;
+		}
+
+		@Override
+		public Vector2f supportPointLocal(Vector2f direction) {
+			return supportPointLocal(direction, supportResults.next());
+		}
+
+		@Override
+		public Vector2f supportPointLocalNegative(Vector2f direction) {
+			return supportPointLocalNegative(direction, supportResults.next());
+		}
+
+		@Override
+		public boolean isCompound() {
+			return false;
+		}
+	}
 }
@@ -0,0 +1,33 @@
+package cars;
+
+/**
+ * Runs the mode 4 neuroevolution headless.
+ * 
+ * Arguments: [nnFilepath to seed from] [population size] [threads]
+ * 
+ * The evolved networks are saved next to it with the suffix _evolved, like
+ * mode 4 of the simulation does. Metrics are enabled from the system
+ * properties as in HeadlessStart. Runs until killed, then the running
+ * generation is dropped and pending checkpoints are written.
+ */
+public class EvolutionStart {
+	public static void main(String[] args) throws InterruptedException {
+		String nnFilepath = args.length > 0 ? args[0] : "res/networks/NN13_CircleTrack";
+		int populationSize = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+		int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+		Simulation seed = new Simulation(nnFilepath, false);
+		final EvolutionTrainer trainer = seed.createEvolution(populationSize, threads);
+		seed.evolution = trainer;
+		seed.enableMetricsFromProperties("Evolution");
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				trainer.stop();
+			}
+		});
+		trainer.start();
+		trainer.thread.join();
+		seed.close();
+	}
+}
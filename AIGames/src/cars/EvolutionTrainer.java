@@ -0,0 +1,197 @@
+package cars;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import ai.CheckpointWriter;
+import ai.Evolution;
+import ai.NeuralNetwork;
+import ai.WeightPublisher;
+import ai.WeightSnapshot;
+
+/**
+ * Neuroevolution behind mode 4. Every candidate of a generation drives
+ * headless from the start of the track for a fixed number of ticks. The
+ * population is split into one group per pool thread and every group drives
+ * at once in its own Fleet, one car per candidate, until its time is up or
+ * it left the track. Fitness is laps plus progress,
+ * the same signal the split trainer compares. The best network found so far
+ * is published after every generation and saved every few generations.
+ */
+public class EvolutionTrainer {
+	final Evolution evolution;
+	final ForkJoinPool pool;
+	final WeightPublisher publisher;
+	final NeuralNetwork best;
+	final int evaluationTicks = 2000;
+	final int savingInterval = 10;
+	final int keptCheckpoints = 5;
+	final String nnFilepath;
+	CheckpointWriter checkpointWriter;
+	long savingIntervalCount;
+	// Only the evolution thread logs
+	final TrainingLog log = new TrainingLog("Evolution", 64);
+
+	final Evaluator[] evaluators;
+	final float[] fitness;
+	volatile boolean running = false;
+	volatile float generationsPerMinute = 0;
+	Thread thread;
+
+	/**
+	 * Drives the candidates first to first + count - 1, reused for every
+	 * generation. The fleet is built once, restart puts its cars back to the
+	 * start.
+	 */
+	class Evaluator {
+		final int first, count;
+		final Fleet fleet;
+		// A copy of best, so the layers keep the activations of the seed
+		final NeuralNetwork nn = new NeuralNetwork(best);
+		final WeightSnapshot[] weights;
+
+		Evaluator(int first, int count) {
+			this.first = first;
+			this.count = count;
+			fleet = new Fleet(TrackPool.getDefault(), count, 1, false);
+			fleet.resetOnMiss = false;
+			weights = new WeightSnapshot[count];
+		}
+
+		void evaluate() {
+			long generation = evolution.getGeneration();
+			for (int g = 0; g < count; g++) {
+				nn.setWeights(evolution.getGenome(first + g));
+				weights[g] = new WeightSnapshot(nn, generation);
+			}
+			fleet.restart();
+			for (int t = 0; t < evaluationTicks && fleet.getHaltedCount() < count && running; t++) {
+				fleet.update(weights, Simulation.tickLength);
+			}
+			for (int g = 0; g < count; g++) {
+				fitness[first + g] = fleet.getNetworkDistance(g);
+			}
+		}
+	}
+
+	/**
+	 * Where evolved networks of the split trainer's nnFilepath are saved, apart
+	 * from its own checkpoints. Null if nnFilepath is null.
+	 */
+	public static String evolvedPath(String nnFilepath) {
+		return nnFilepath != null ? nnFilepath + "_evolved" : null;
+	}
+
+	public EvolutionTrainer(String nnFilepath, NeuralNetwork seed, int populationSize, int threads) {
+		this.nnFilepath = nnFilepath;
+		evolution = new Evolution(seed, populationSize);
+		pool = new ForkJoinPool(threads);
+		best = new NeuralNetwork(seed);
+		publisher = new WeightPublisher(best);
+		fitness = new float[populationSize];
+		int groups = Math.min(threads, populationSize);
+		evaluators = new Evaluator[groups];
+		for (int i = 0; i < groups; i++) {
+			int first = (int) ((long) i * populationSize / groups);
+			int next = (int) ((long) (i + 1) * populationSize / groups);
+			evaluators[i] = new Evaluator(first, next - first);
+		}
+	}
+
+	public void start() {
+		running = true;
+		thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				evolve();
+			}
+		}, "Evolution");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Cuts the running generation short, waits for the evolution thread and
+	 * shuts the pool down. The generation that was cut short is dropped.
+	 * Safe to call more than once, e.g. from a shutdown hook and close.
+	 */
+	public synchronized void stop() {
+		running = false;
+		try {
+			if (thread != null) {
+				thread.join();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		pool.shutdown();
+		if (checkpointWriter != null) {
+			checkpointWriter.close();
+			checkpointWriter = null;
+		}
+		log.close();
+	}
+
+	private void evolve() {
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (final Evaluator e : evaluators) {
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					e.evaluate();
+					return null;
+				}
+			});
+		}
+		long start = System.nanoTime();
+		while (running) {
+			try {
+				for (Future<Void> f : pool.invokeAll(tasks)) {
+					f.get();
+				}
+			} catch (InterruptedException e) {
+				return;
+			} catch (ExecutionException e) {
+				e.getCause().printStackTrace();
+				return;
+			}
+			if (!running) {
+				return;
+			}
+			evolution.nextGeneration(fitness);
+			evolution.copyBestTo(best);
+			publisher.publish(best);
+
+			long generation = evolution.getGeneration();
+			generationsPerMinute = generation * 60000000000f / (System.nanoTime() - start);
+			log.log(TrainingLog.generation, generation, evolution.getBestFitness(), generationsPerMinute);
+			if (nnFilepath != null && generation % savingInterval == 0) {
+				if (checkpointWriter == null) {
+					checkpointWriter = new CheckpointWriter(nnFilepath, keptCheckpoints);
+				}
+				savingIntervalCount++;
+				checkpointWriter.submit(best, savingIntervalCount);
+			}
+		}
+	}
+
+	public WeightPublisher getPublisher() {
+		return publisher;
+	}
+
+	public float getGenerationsPerMinute() {
+		return generationsPerMinute;
+	}
+
+	public long getGeneration() {
+		return evolution.getGeneration();
+	}
+
+	public float getBestFitness() {
+		return evolution.getBestFitness();
+	}
+}
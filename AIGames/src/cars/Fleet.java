@@ -0,0 +1,306 @@
+package cars;
+
+import java.util.List;
+
+import ai.BatchInference;
+import ai.WeightSnapshot;
+import manifold.RaycastResult;
+import physics.PhysicsSpace2;
+import quaternion.Complexf;
+import vector.Vector2f;
+
+/**
+ * Many cars in one physics space, driven by one or more networks. Every
+ * network drives carsPerNetwork cars, all of its cars run in one
+ * BatchInference call and one space update advances the whole fleet. The
+ * walls are added once and shared, the cars don't collide with each other.
+ * Every car has its own segment tracker, sensors and last actions.
+ *
+ * The cars of a network start spread over the trackpoints, each one facing
+ * along the track, and every network gets the same starts. A car whose
+ * sensors miss the walls, i.e. one that left the track, is put back into its
+ * start state while the others keep driving, or halted for good like the car
+ * of a Simulation if resetOnMiss is off.
+ */
+public class Fleet {
+	final PhysicsSpace2 space;
+	// The walls alone, for raycasts without the sensor grid, so no ray needs
+	// a filter for the cars
+	PhysicsSpace2 raySpace;
+	final Track track;
+	final List<Wall> walls;
+	final Car[] cars;
+	final SegmentTracker[] trackers;
+	final SensorCaster sensorCaster;
+	boolean useSensorCaster = true;
+	boolean resetOnMiss = true;
+	float undefinedRayDistance = 0;
+
+	final int networks, carsPerNetwork;
+	final float[] carDistances = new float[Simulation.numRaycasts];
+	final int[] actions;
+	final int[] laps;
+	final boolean[] halted;
+	int haltedCount = 0;
+	final WorldSnapshot starts;
+	int resetCount = 0;
+
+	// Network inputs and outputs as BatchInference matrices, one pair per
+	// network with one column per car of it
+	final float[][] nnIns, nnOuts;
+	final int nnOutputs = 4;
+	BatchInference.Workspace workspace;
+
+	private Complexf rayrotation = new Complexf();
+	private Vector2f lastdirection = new Vector2f();
+	private Vector2f raystart = new Vector2f();
+
+	public Fleet(Track track, int networks, int carsPerNetwork, boolean render) {
+		this.track = track;
+		this.networks = networks;
+		this.carsPerNetwork = carsPerNetwork;
+		space = Simulation.createSpace();
+		walls = track.addTo(space, render);
+		sensorCaster = new SensorCaster(track.getSensorGrid());
+		rayrotation.rotate(360 / (float) Simulation.numRaycasts);
+
+		Vector2f[] trackpoints = track.getTrackpoints();
+		int count = networks * carsPerNetwork;
+		cars = new Car[count];
+		trackers = new SegmentTracker[count];
+		for (int c = 0; c < count; c++) {
+			int point = (int) ((long) (c % carsPerNetwork) * trackpoints.length / carsPerNetwork);
+			Vector2f start = trackpoints[point];
+			cars[c] = new Car(start.x, start.y, Simulation.numRaycasts, render);
+			space.addRigidBody(cars[c], cars[c].getBody());
+			face(cars[c], track.tracktangents[point]);
+			trackers[c] = new SegmentTracker(track);
+			trackers[c].relocate(cars[c]);
+		}
+		// The engine only filters pairs of bodies
+		for (int c = 0; c < count; c++) {
+			for (int other = c + 1; other < count; other++) {
+				space.addCollisionFilter(cars[c].getBody(), cars[other].getBody());
+			}
+		}
+
+		actions = new int[count];
+		laps = new int[count];
+		halted = new boolean[count];
+		starts = new WorldSnapshot(count);
+		starts.capture(cars, trackers, count);
+		nnIns = new float[networks][(Simulation.numRaycasts + 8) * carsPerNetwork];
+		nnOuts = new float[networks][nnOutputs * carsPerNetwork];
+	}
+
+	/**
+	 * Turns car, whose initial direction is +x, to face along direction.
+	 */
+	private static void face(Car car, Vector2f direction) {
+		float length = (float) direction.length();
+		car.getRotation().set(direction.x / length, direction.y / length);
+		car.getBody().updateInverseRotation();
+		car.getBody().updateAABB();
+	}
+
+	/**
+	 * One tick: sensors and progress of every car, one batched forward pass
+	 * per network for its cars, then one physics update. Network g drives
+	 * with weights[g].
+	 */
+	public void update(WeightSnapshot[] weights, int delta) {
+		if (workspace == null) {
+			workspace = new BatchInference.Workspace(weights[0].getTopology());
+		}
+		int count = cars.length;
+		for (int c = 0; c < count; c++) {
+			if (halted[c]) {
+				continue;
+			}
+			Car car = cars[c];
+			car.update();
+			if (!doRaycasts(c) && (!resetOnMiss || !resetAndCast(c))) {
+				halt(c);
+				continue;
+			}
+			SegmentTracker tracker = trackers[c];
+			tracker.update(car);
+			if (tracker.nextLap) {
+				laps[c]++;
+				tracker.nextLap = false;
+			}
+			int a = actions[c];
+			Simulation.fillNetworkInputs(car, tracker, carDistances, (a & ActionTrace.up) != 0,
+					(a & ActionTrace.down) != 0, (a & ActionTrace.left) != 0, (a & ActionTrace.right) != 0,
+					nnIns[c / carsPerNetwork], c % carsPerNetwork, carsPerNetwork);
+		}
+		for (int g = 0; g < networks; g++) {
+			weights[g].inferBatch(nnIns[g], carsPerNetwork, nnOuts[g], workspace);
+		}
+		for (int c = 0; c < count; c++) {
+			Car car = cars[c];
+			if (halted[c]) {
+				// Stays where it stopped, the space still integrates it
+				car.getBody().getLinearVelocity().set(0, 0);
+				car.getBody().getAngularVelocity().set(0);
+				continue;
+			}
+			float[] out = nnOuts[c / carsPerNetwork];
+			int j = c % carsPerNetwork;
+			int a = 0;
+			if (out[j] > 0) {
+				a |= ActionTrace.up;
+				car.accelerate();
+			}
+			if (out[carsPerNetwork + j] > 0) {
+				a |= ActionTrace.down;
+				car.brake();
+			}
+			if (out[2 * carsPerNetwork + j] > 0) {
+				a |= ActionTrace.left;
+				car.steerLeft();
+			}
+			if (out[3 * carsPerNetwork + j] > 0) {
+				a |= ActionTrace.right;
+				car.steerRight();
+			}
+			actions[c] = a;
+		}
+		space.update(delta);
+	}
+
+	/**
+	 * Casts the sensors of car c into carDistances. A ray that missed every
+	 * wall gets undefinedRayDistance, like in Simulation, and false is
+	 * returned.
+	 */
+	private boolean doRaycasts(int c) {
+		Car car = cars[c];
+		lastdirection.set(car.direction);
+		for (int i = 0; i < Simulation.numRaycasts; i++) {
+			if (i > 0) {
+				lastdirection.transform(rayrotation);
+			}
+			car.rays[i].getDirection().set(lastdirection);
+			raystart.set(car.raystartpoints[i]);
+			raystart.transform(car.getRotation());
+			raystart.translate(car.getTranslation());
+			car.rays[i].getPosition().set(raystart);
+		}
+		boolean hit = true;
+		if (useSensorCaster) {
+			if (sensorCaster.cast(car.rays, carDistances) != 0) {
+				hit = false;
+				for (int i = 0; i < Simulation.numRaycasts; i++) {
+					if (carDistances[i] < 0) {
+						carDistances[i] = undefinedRayDistance;
+					}
+				}
+			}
+		} else {
+			if (raySpace == null) {
+				raySpace = Simulation.createSpace();
+				track.addTo(raySpace, false);
+			}
+			for (int i = 0; i < Simulation.numRaycasts; i++) {
+				RaycastResult<Vector2f> rr = raySpace.raycast(car.rays[i]);
+				if (rr != null) {
+					carDistances[i] = rr.getHitDistance();
+				} else {
+					carDistances[i] = undefinedRayDistance;
+					hit = false;
+				}
+			}
+		}
+		return hit;
+	}
+
+	/**
+	 * Resets car c and casts its sensors again from the start. Returns false
+	 * if they miss there too.
+	 */
+	private boolean resetAndCast(int c) {
+		reset(c);
+		cars[c].update();
+		return doRaycasts(c);
+	}
+
+	/**
+	 * Stops car c for good, until restart.
+	 */
+	private void halt(int c) {
+		halted[c] = true;
+		haltedCount++;
+		actions[c] = 0;
+	}
+
+	/**
+	 * Puts car c back into its start state: pose, velocities, accumulated
+	 * force and torque and its tracker. Its laps are kept.
+	 */
+	private void reset(int c) {
+		starts.restore(c, cars[c], trackers[c]);
+		actions[c] = 0;
+		resetCount++;
+	}
+
+	/**
+	 * Puts every car back into its start state and clears laps, halts and
+	 * the reset count, e.g. to evaluate new weights.
+	 */
+	public void restart() {
+		starts.restore(cars, trackers);
+		for (int c = 0; c < cars.length; c++) {
+			actions[c] = 0;
+			laps[c] = 0;
+			halted[c] = false;
+		}
+		haltedCount = 0;
+		resetCount = 0;
+	}
+
+	/**
+	 * Laps plus progress into the current lap of car c.
+	 */
+	public float getDistance(int c) {
+		return laps[c] + trackers[c].progress;
+	}
+
+	/**
+	 * Mean distance of the cars network g drives.
+	 */
+	public float getNetworkDistance(int g) {
+		float sum = 0;
+		for (int c = g * carsPerNetwork; c < (g + 1) * carsPerNetwork; c++) {
+			sum += getDistance(c);
+		}
+		return sum / carsPerNetwork;
+	}
+
+	public int getCarCount() {
+		return cars.length;
+	}
+
+	/**
+	 * How often a car left the track and was put back to its start.
+	 */
+	public int getResetCount() {
+		return resetCount;
+	}
+
+	/**
+	 * How many cars are halted after leaving the track, only with resetOnMiss
+	 * off or if a start state misses the walls.
+	 */
+	public int getHaltedCount() {
+		return haltedCount;
+	}
+
+	public Car getCar(int c) {
+		return cars[c];
+	}
+
+	public List<Wall> getWalls() {
+		return walls;
+	}
+}
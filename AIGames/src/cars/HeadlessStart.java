@@ -0,0 +1,99 @@
+package cars;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class HeadlessStart {
+	final static long reportInterval = 5000000000L;
+	static volatile boolean stopping = false;
+
+	public static void main(String[] args) throws InterruptedException {
+		String nnFilepath = args.length > 0 ? args[0] : "res/networks/NN13_CircleTrack";
+		int workers = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+		if (workers > 1) {
+			runParallel(nnFilepath, workers);
+			return;
+		}
+		Simulation sim = new Simulation(nnFilepath, null, TrackPool.fromProperties()[0], false);
+		sim.mode = 3;
+		sim.enableMetricsFromProperties("headless");
+		sim.configureLogFromProperties();
+		File recordingFile = null;
+		if (args.length > 2) {
+			recordingFile = new File(args[2]);
+			sim.startRecording();
+		}
+		// Runs until killed, let the loop finish its tick, write the recording and the last checkpoint
+		final CountDownLatch stopped = new CountDownLatch(1);
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				stopping = true;
+				try {
+					stopped.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+				}
+			}
+		});
+
+		float realtimeTicksPerSecond = 1000f / Simulation.tickLength;
+		long ticks = 0;
+		long lastReport = System.nanoTime();
+		while (!stopping) {
+			sim.update(Simulation.tickLength);
+			ticks++;
+			if (sim.errorstop) {
+				// No one to press 3 here, resume training right away
+				sim.errorstop = false;
+				sim.mode = 3;
+			}
+			if ((ticks & 1023) == 0) {
+				long now = System.nanoTime();
+				if (now - lastReport >= reportInterval) {
+					float ticksPerSecond = ticks * 1000000000f / (now - lastReport);
+					System.out.println("Ticks/s: " + ticksPerSecond + " (" + (ticksPerSecond / realtimeTicksPerSecond)
+							+ "x realtime)");
+					ticks = 0;
+					lastReport = now;
+				}
+			}
+		}
+		if (recordingFile != null) {
+			try {
+				sim.stopRecording().write(recordingFile);
+				System.out.println("Recording saved to " + recordingFile);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		sim.close();
+		stopped.countDown();
+	}
+
+	private static void runParallel(String nnFilepath, int workers) throws InterruptedException {
+		final ParallelTrainer trainer = new ParallelTrainer(nnFilepath, workers);
+		// Runs until killed, save the last merged samples
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				trainer.stop();
+			}
+		});
+		trainer.start();
+		float realtimeTicksPerSecond = 1000f / Simulation.tickLength;
+		long lastTicks = 0;
+		long lastReport = System.nanoTime();
+		while (true) {
+			Thread.sleep(reportInterval / 1000000);
+			long ticks = trainer.getTicks();
+			long now = System.nanoTime();
+			float ticksPerSecond = (ticks - lastTicks) * 1000000000f / (now - lastReport);
+			System.out.println("Ticks/s: " + ticksPerSecond + " (" + (ticksPerSecond / realtimeTicksPerSecond)
+					+ "x realtime, " + workers + " workers)");
+			lastTicks = ticks;
+			lastReport = now;
+		}
+	}
+}
@@ -0,0 +1,273 @@
+package cars;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import objects.RigidBody2;
+
+/**
+ * The inputs passed to the car on every tick, packed at 4 bits per tick in an
+ * ActionTrace, plus everything else that moved the car: trainer snapshots,
+ * restores and teleports, and ticks where the physics was halted after a
+ * raycast error.
+ * Together with the start state, the split snapshot active at the start and
+ * the track that is enough to re-simulate a session without the network. An
+ * hour of driving is about 110 KB.
+ *
+ * Version 2 adds the track, the torque accumulator to the start state and
+ * the split snapshot. Version 1 recordings replay on the default track.
+ */
+public class InputRecording {
+	final static int magic = 0x41495243; // "AIRC"
+	final static int version = 2;
+	final static int version1StartValues = 10;
+
+	// Events, applied after the inputs of their tick
+	final static int capture = 0, restore = 1, teleport = 2, halt = 3, resume = 4;
+
+	String network;
+	long checkpoint;
+	int mode;
+	String trackName = "";
+	// Empty for the built in track
+	String trackFile = "";
+	final float[] start = new float[11];
+	boolean startForward;
+	// The split the trainer was in when recording started, restore events rewind to it
+	WorldSnapshot split;
+	final float[] end = new float[2];
+
+	ActionTrace inputs = new ActionTrace(4096);
+	int[] eventTicks = new int[64];
+	int[] eventTypes = new int[64];
+	int[] eventArgs = new int[64];
+	int events = 0;
+	boolean halted = false;
+
+	InputRecording() {
+	}
+
+	/**
+	 * Starts recording at the current state of sim.
+	 */
+	public InputRecording(Simulation sim) {
+		network = sim.nnFilepath != null ? sim.nnFilepath : "";
+		checkpoint = sim.savingIntervalCount;
+		mode = sim.mode;
+		trackName = sim.track.getName();
+		trackFile = sim.track.getFile() != null ? sim.track.getFile() : "";
+		Car car = sim.car;
+		RigidBody2 body = car.getBody();
+		start[0] = car.getTranslation().x;
+		start[1] = car.getTranslation().y;
+		start[2] = car.getRotation().getRealf();
+		start[3] = car.getRotation().getImaginaryf();
+		start[4] = body.getLinearVelocity().x;
+		start[5] = body.getLinearVelocity().y;
+		start[6] = body.getAngularVelocity().x;
+		start[7] = body.getForceAccumulator().x;
+		start[8] = body.getForceAccumulator().y;
+		start[9] = car.lineardamping;
+		start[10] = body.getTorqueAccumulator().x;
+		startForward = sim.tracker.forward;
+		if (sim.split.size() > 0) {
+			split = new WorldSnapshot(sim.split.size());
+			split.set(sim.split);
+		}
+	}
+
+	/**
+	 * The recorded track from TrackPool. Falls back to the default track if
+	 * the file can't be read but the default track has the recorded name.
+	 */
+	public Track loadTrack() throws IOException {
+		if (trackFile.isEmpty()) {
+			return TrackPool.getDefault();
+		}
+		try {
+			return TrackPool.get(trackFile);
+		} catch (IOException e) {
+			Track fallback = TrackPool.getDefault();
+			if (fallback.getName().equals(trackName)) {
+				return fallback;
+			}
+			throw new IOException("Recorded on track " + trackName + ", couldn't read " + trackFile + ": "
+					+ e.getMessage());
+		}
+	}
+
+	/**
+	 * Puts the car of sim into the recorded start state and its split
+	 * snapshot into the recorded one.
+	 */
+	public void applyStart(Simulation sim) {
+		Car car = sim.car;
+		RigidBody2 body = car.getBody();
+		car.getTranslation().set(start[0], start[1]);
+		car.getRotation().set(start[2], start[3]);
+		body.getLinearVelocity().set(start[4], start[5]);
+		body.getAngularVelocity().set(start[6]);
+		body.getForceAccumulator().set(start[7], start[8]);
+		car.setLinearDamping(start[9]);
+		body.getTorqueAccumulator().set(start[10]);
+		sim.tracker.forward = startForward;
+		sim.tracker.relocate(car);
+		if (split != null) {
+			sim.split.set(split);
+		}
+	}
+
+	public void input(boolean up, boolean down, boolean left, boolean right) {
+		inputs.append(up, down, left, right);
+	}
+
+	/**
+	 * Records an event in the current tick, the one of the last input.
+	 */
+	public void event(int type, int arg) {
+		if (events == eventTicks.length) {
+			eventTicks = Arrays.copyOf(eventTicks, events * 2);
+			eventTypes = Arrays.copyOf(eventTypes, events * 2);
+			eventArgs = Arrays.copyOf(eventArgs, events * 2);
+		}
+		eventTicks[events] = inputs.length() - 1;
+		eventTypes[events] = type;
+		eventArgs[events] = arg;
+		events++;
+	}
+
+	/**
+	 * Called once per tick with whether the physics step is skipped.
+	 */
+	public void halted(boolean halted) {
+		if (halted != this.halted) {
+			event(halted ? halt : resume, 0);
+			this.halted = halted;
+		}
+	}
+
+	public int getInputs(int tick) {
+		return inputs.get(tick);
+	}
+
+	public int getTicks() {
+		return inputs.length();
+	}
+
+	public void finish(Simulation sim) {
+		end[0] = sim.car.getTranslation().x;
+		end[1] = sim.car.getTranslation().y;
+	}
+
+	public void write(File file) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			out.writeInt(magic);
+			out.writeInt(version);
+			out.writeUTF(network);
+			out.writeLong(checkpoint);
+			out.writeInt(mode);
+			out.writeInt(Simulation.tickLength);
+			out.writeUTF(trackName);
+			out.writeUTF(trackFile);
+			for (float f : start) {
+				out.writeFloat(f);
+			}
+			out.writeBoolean(startForward);
+			out.writeBoolean(split != null);
+			if (split != null) {
+				split.write(out);
+			}
+			out.writeFloat(end[0]);
+			out.writeFloat(end[1]);
+			int ticks = inputs.length();
+			out.writeInt(ticks);
+			for (int t = 0; t < ticks; t += 2) {
+				int high = t + 1 < ticks ? inputs.get(t + 1) : 0;
+				out.writeByte(inputs.get(t) | high << 4);
+			}
+			out.writeInt(events);
+			for (int i = 0; i < events; i++) {
+				out.writeInt(eventTicks[i]);
+				out.writeByte(eventTypes[i]);
+				out.writeInt(eventArgs[i]);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	public static InputRecording read(File file) throws IOException {
+		// Read whole, so available() is the number of bytes left to check counts against
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file.toPath())));
+		try {
+			if (in.readInt() != magic) {
+				throw new IOException(file + " is no input recording");
+			}
+			int v = in.readInt();
+			if (v < 1 || v > version) {
+				throw new IOException("Unsupported recording version " + v);
+			}
+			InputRecording r = new InputRecording();
+			r.network = in.readUTF();
+			r.checkpoint = in.readLong();
+			r.mode = in.readInt();
+			int tickLength = in.readInt();
+			if (tickLength != Simulation.tickLength) {
+				throw new IOException("Recorded with " + tickLength + " ms ticks, simulation uses "
+						+ Simulation.tickLength);
+			}
+			if (v >= 2) {
+				r.trackName = in.readUTF();
+				r.trackFile = in.readUTF();
+			}
+			int startValues = v >= 2 ? r.start.length : version1StartValues;
+			for (int i = 0; i < startValues; i++) {
+				r.start[i] = in.readFloat();
+			}
+			r.startForward = in.readBoolean();
+			if (v >= 2 && in.readBoolean()) {
+				r.split = new WorldSnapshot(1);
+				r.split.read(in);
+			}
+			r.end[0] = in.readFloat();
+			r.end[1] = in.readFloat();
+			int ticks = in.readInt();
+			// Two ticks per byte
+			if (ticks < 0 || (ticks + 1L) / 2 > in.available()) {
+				throw new IOException("Invalid tick count " + ticks + " in recording " + file);
+			}
+			r.inputs = new ActionTrace(ticks);
+			for (int t = 0; t < ticks; t += 2) {
+				int b = in.readUnsignedByte();
+				r.inputs.append(b & 15);
+				if (t + 1 < ticks) {
+					r.inputs.append(b >> 4);
+				}
+			}
+			r.events = in.readInt();
+			// Tick, type and argument take 9 bytes
+			if (r.events < 0 || 9L * r.events > in.available()) {
+				throw new IOException("Invalid event count " + r.events + " in recording " + file);
+			}
+			r.eventTicks = new int[r.events];
+			r.eventTypes = new int[r.events];
+			r.eventArgs = new int[r.events];
+			for (int i = 0; i < r.events; i++) {
+				r.eventTicks[i] = in.readInt();
+				r.eventTypes[i] = in.readByte();
+				r.eventArgs[i] = in.readInt();
+			}
+			return r;
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,207 @@
+package cars;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import ai.CheckpointWriter;
+import ai.NeuralNetwork;
+import ai.WeightPublisher;
+
+/**
+ * Runs the timeline split trainer on several independent worlds at once.
+ * Workers only do inference on a private copy of the network and hand their
+ * winning splits to a single merging thread that owns the master network.
+ * Every worker has its own preallocated ring of samples, a full ring drops
+ * new samples instead of blocking the worker.
+ */
+public class ParallelTrainer {
+	final String nnFilepath;
+	NeuralNetwork master;
+	final WeightPublisher publisher;
+	final int publishInterval = 8;
+	final int savingInterval = 1000;
+	long savingIntervalCount;
+	CheckpointWriter checkpointWriter;
+	long mergedSamples = 0;
+
+	final int ringCapacity = 1024;
+	final long idleNanos = TimeUnit.MILLISECONDS.toNanos(1);
+	Worker[] workers;
+	Thread[] threads;
+	Thread mergeThread;
+	volatile boolean running = false;
+
+	public ParallelTrainer(String nnFilepath, int workerCount) {
+		this(nnFilepath, workerCount, TrackPool.fromProperties());
+	}
+
+	/**
+	 * Spreads the workers over tracks round robin, they all share the
+	 * compiled geometry of their track.
+	 */
+	public ParallelTrainer(String nnFilepath, int workerCount, Track[] tracks) {
+		this.nnFilepath = nnFilepath;
+		workers = new Worker[workerCount];
+		workers[0] = new Worker(nnFilepath, null, tracks[0]);
+		master = new NeuralNetwork(workers[0].nn);
+		publisher = new WeightPublisher(master);
+		savingIntervalCount = workers[0].savingIntervalCount;
+		if (nnFilepath != null) {
+			checkpointWriter = new CheckpointWriter(nnFilepath, workers[0].keptCheckpoints);
+		}
+		for (int i = 1; i < workerCount; i++) {
+			workers[i] = new Worker(null, new NeuralNetwork(master), tracks[i % tracks.length]);
+		}
+	}
+
+	public void start() {
+		running = true;
+		threads = new Thread[workers.length];
+		for (int i = 0; i < workers.length; i++) {
+			threads[i] = new Thread(workers[i], "SimulationWorker-" + i);
+			threads[i].setDaemon(true);
+			threads[i].start();
+		}
+		mergeThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				merge();
+			}
+		}, "SampleMerger");
+		mergeThread.setDaemon(true);
+		mergeThread.start();
+	}
+
+	/**
+	 * Stops the workers and the merging thread and saves what was merged
+	 * since the last checkpoint before the writer is closed.
+	 */
+	public void stop() {
+		running = false;
+		try {
+			for (Thread t : threads) {
+				t.join();
+			}
+			mergeThread.join();
+			for (Worker w : workers) {
+				w.close();
+			}
+			if (checkpointWriter != null) {
+				if (mergedSamples % savingInterval != 0) {
+					savingIntervalCount++;
+					checkpointWriter.submit(master, savingIntervalCount);
+				}
+				checkpointWriter.close();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public long getTicks() {
+		long ticks = 0;
+		for (Worker w : workers) {
+			ticks += w.ticks;
+		}
+		return ticks;
+	}
+
+	public int getWorkerCount() {
+		return workers.length;
+	}
+
+	/**
+	 * Samples dropped because a worker's ring was full.
+	 */
+	public long getDroppedSamples() {
+		long dropped = 0;
+		for (Worker w : workers) {
+			dropped += w.dropped;
+		}
+		return dropped;
+	}
+
+	private void merge() {
+		int inputs = workers[0].nnInputs;
+		float[] in = new float[inputs];
+		float[] expected = new float[workers[0].expectedOutputs.length];
+		while (running) {
+			boolean merged = false;
+			for (Worker w : workers) {
+				long h = w.head.get();
+				if (h == w.tail.get()) {
+					continue;
+				}
+				int offset = ((int) h & (ringCapacity - 1)) * w.sampleLength;
+				System.arraycopy(w.ring, offset, in, 0, inputs);
+				System.arraycopy(w.ring, offset + inputs, expected, 0, expected.length);
+				w.head.lazySet(h + 1);
+				merged = true;
+				master.feedForward(in);
+				master.backProp(expected);
+				mergedSamples++;
+				if (mergedSamples % publishInterval == 0) {
+					publisher.publish(master);
+				}
+				if (checkpointWriter != null && mergedSamples % savingInterval == 0) {
+					savingIntervalCount++;
+					checkpointWriter.submit(master, savingIntervalCount);
+				}
+			}
+			if (!merged) {
+				LockSupport.parkNanos(idleNanos);
+			}
+		}
+	}
+
+	class Worker extends Simulation implements Runnable {
+		long localVersion = 0;
+		volatile long ticks = 0;
+
+		// Samples of this worker for the merging thread, written by the worker
+		// only, tail is published after the sample is written
+		final int sampleLength;
+		final float[] ring;
+		final AtomicLong head = new AtomicLong(), tail = new AtomicLong();
+		volatile long dropped = 0;
+
+		Worker(String nnFilepath, NeuralNetwork nn, Track track) {
+			super(nnFilepath, nn, track, false);
+			mode = 3;
+			sampleLength = nnInputs + expectedOutputs.length;
+			ring = new float[ringCapacity * sampleLength];
+		}
+
+		@Override
+		protected void learn(float[] inputs, float[] expected, float progressDelta) {
+			long t = tail.get();
+			if (t - head.get() >= ringCapacity) {
+				dropped++;
+				return;
+			}
+			int offset = ((int) t & (ringCapacity - 1)) * sampleLength;
+			System.arraycopy(inputs, 0, ring, offset, inputs.length);
+			System.arraycopy(expected, 0, ring, offset + inputs.length, expected.length);
+			tail.lazySet(t + 1);
+		}
+
+		@Override
+		protected void save() {
+			// The merging thread saves the master network
+		}
+
+		@Override
+		public void run() {
+			while (running) {
+				localVersion = publisher.sync(nn, localVersion);
+				update(tickLength);
+				ticks++;
+				if (errorstop) {
+					errorstop = false;
+					mode = 3;
+				}
+			}
+		}
+	}
+}
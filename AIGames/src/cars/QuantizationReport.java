@@ -0,0 +1,136 @@
+package cars;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import ai.Inference;
+import ai.NetworkFile;
+import ai.QuantizedNetwork;
+
+/**
+ * Quantizes a network to int8, writes it as a .nnq file and reports how
+ * often the driving decisions (output > 0) of the int8 and the float network
+ * differ, plus the inference speed and file size of both. The sensor inputs
+ * come from replaying a recording, or from driving the float network in
+ * mode 2 if none is given.
+ *
+ * Arguments: network [recording] [output, default network + .nnq]
+ */
+public class QuantizationReport {
+	final static int drivingTicks = 20000;
+	final static long minNanos = 1000000000L;
+
+	static float sink;
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.out.println("Usage: QuantizationReport <network> [recording] [output]");
+			return;
+		}
+		String nnFilepath = args[0];
+		InputRecording recording = args.length > 1 && !args[1].isEmpty() ? InputRecording.read(new File(args[1]))
+				: null;
+		Track track = recording != null ? recording.loadTrack() : TrackPool.getDefault();
+		Simulation sim = new Simulation(nnFilepath, null, track, false);
+		QuantizedNetwork qn = new QuantizedNetwork(sim.nn);
+		List<float[]> samples = recording != null ? replayInputs(sim, recording) : drivingInputs(sim);
+		sim.close();
+
+		Inference.Workspace ws = sim.nn.createWorkspace();
+		QuantizedNetwork.Workspace qws = qn.createWorkspace();
+		int outputs = sim.nnOuts.length;
+		float[] out = new float[outputs];
+		float[] qout = new float[outputs];
+		long differingDecisions = 0;
+		long differingTicks = 0;
+		float maxDifference = 0;
+		for (float[] in : samples) {
+			sim.nn.infer(in, ws, out);
+			qn.infer(in, qws, qout);
+			boolean differs = false;
+			for (int o = 0; o < outputs; o++) {
+				if (out[o] > 0 != qout[o] > 0) {
+					differingDecisions++;
+					differs = true;
+				}
+				maxDifference = Math.max(maxDifference, Math.abs(out[o] - qout[o]));
+			}
+			if (differs) {
+				differingTicks++;
+			}
+		}
+		System.out.println(samples.size() + " ticks, " + differingTicks + " with a different action ("
+				+ (100f * differingTicks / samples.size()) + "%), " + differingDecisions + " of "
+				+ (samples.size() * (long) outputs) + " decisions differ, max output difference " + maxDifference);
+
+		float floatTime = time(samples, sim, ws, null, null, out);
+		float quantizedTime = time(samples, sim, null, qn, qws, out);
+		System.out.println("float " + floatTime + " ns/inference, int8 " + quantizedTime + " ns/inference ("
+				+ (floatTime / quantizedTime) + "x)");
+
+		File output = new File(args.length > 2 ? args[2] : nnFilepath + QuantizedNetwork.extension);
+		QuantizedNetwork.write(qn, output);
+		File floatFile = File.createTempFile("network", NetworkFile.extension);
+		try {
+			NetworkFile.write(sim.nn, 0, floatFile);
+			System.out.println("float file " + floatFile.length() + " bytes, int8 file " + output.length()
+					+ " bytes (" + ((float) floatFile.length() / output.length()) + "x smaller), written to "
+					+ output);
+		} finally {
+			floatFile.delete();
+		}
+	}
+
+	/**
+	 * Network inputs at every tick of a recording, with the actions of the
+	 * previous tick as the network saw them.
+	 */
+	static List<float[]> replayInputs(Simulation sim, InputRecording recording) {
+		Replay replay = new Replay(recording, sim);
+		List<float[]> samples = new ArrayList<float[]>();
+		int ticks = recording.getTicks();
+		for (int t = 0; t < ticks; t++) {
+			replay.prepare(t, false);
+			sim.doRaycasts(sim.car);
+			int previous = t > 0 ? recording.getInputs(t - 1) : 0;
+			sim.lastUp = (previous & ActionTrace.up) != 0;
+			sim.lastDown = (previous & ActionTrace.down) != 0;
+			sim.lastLeft = (previous & ActionTrace.left) != 0;
+			sim.lastRight = (previous & ActionTrace.right) != 0;
+			sim.fillNetworkInputs();
+			samples.add(sim.nnIns.clone());
+			replay.apply(t);
+		}
+		return samples;
+	}
+
+	static List<float[]> drivingInputs(Simulation sim) {
+		sim.mode = 2;
+		List<float[]> samples = new ArrayList<float[]>();
+		for (int t = 0; t < drivingTicks && !sim.errorstop; t++) {
+			sim.update(Simulation.tickLength);
+			samples.add(sim.nnIns.clone());
+		}
+		return samples;
+	}
+
+	static float time(List<float[]> samples, Simulation sim, Inference.Workspace ws, QuantizedNetwork qn,
+			QuantizedNetwork.Workspace qws, float[] out) {
+		long runs = 0;
+		long time;
+		long start = System.nanoTime();
+		do {
+			for (float[] in : samples) {
+				if (qn != null) {
+					sink += qn.infer(in, qws, out)[0];
+				} else {
+					sink += sim.nn.infer(in, ws, out)[0];
+				}
+			}
+			runs++;
+		} while ((time = System.nanoTime() - start) < minNanos || runs < 3);
+		return time / (float) (runs * samples.size());
+	}
+}
@@ -0,0 +1,114 @@
+package cars;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Re-simulates an input recording headless at full speed. The network isn't
+ * needed, the recorded inputs and trainer events drive the car.
+ * 
+ * Arguments: recording file
+ */
+public class Replay {
+	final static float positionTolerance = 0.01f;
+
+	final InputRecording recording;
+	final Simulation sim;
+	int laps = 0;
+	int lastLap = 0;
+	int nextEvent = 0;
+	boolean halted = false;
+
+	public Replay(InputRecording recording, Simulation sim) {
+		this.recording = recording;
+		this.sim = sim;
+		recording.applyStart(sim);
+	}
+
+	/**
+	 * First half of tick t: moves the car to where the network of the
+	 * recorded run saw it and counts laps.
+	 */
+	void prepare(int t, boolean printLaps) {
+		sim.car.update();
+		sim.tracker.update(sim.car);
+		if (sim.tracker.nextLap) {
+			laps++;
+			if (printLaps) {
+				System.out.println("Lap " + laps + " at tick " + t + ", "
+						+ ((t - lastLap) * Simulation.tickLength / 1000f) + " s");
+			}
+			lastLap = t;
+			sim.tracker.nextLap = false;
+		}
+	}
+
+	/**
+	 * Second half of tick t: applies the recorded inputs and events and steps
+	 * the physics.
+	 */
+	void apply(int t) {
+		int inputs = recording.getInputs(t);
+		sim.passCarInputs((inputs & ActionTrace.up) != 0, (inputs & ActionTrace.down) != 0,
+				(inputs & ActionTrace.left) != 0, (inputs & ActionTrace.right) != 0);
+		for (; nextEvent < recording.events && recording.eventTicks[nextEvent] == t; nextEvent++) {
+			switch (recording.eventTypes[nextEvent]) {
+			case InputRecording.capture:
+				sim.split.capture(sim.car, sim.tracker);
+				break;
+			case InputRecording.restore:
+				sim.split.restore(sim.car, sim.tracker);
+				break;
+			case InputRecording.teleport:
+				sim.car.getTranslation().set(sim.trackpoints[recording.eventArgs[nextEvent]]);
+				sim.tracker.relocate(sim.car);
+				break;
+			case InputRecording.halt:
+				halted = true;
+				break;
+			case InputRecording.resume:
+				halted = false;
+				break;
+			}
+		}
+		if (!halted) {
+			sim.space.update(Simulation.tickLength);
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.out.println("Usage: Replay <recording>");
+			return;
+		}
+		InputRecording recording = InputRecording.read(new File(args[0]));
+		Track track = recording.loadTrack();
+		System.out.println("Network " + recording.network + ", checkpoint " + recording.checkpoint + ", mode "
+				+ recording.mode + ", track " + track.getName() + ", " + recording.getTicks() + " ticks, "
+				+ recording.events + " events");
+
+		Simulation sim = new Simulation(null, null, track, false);
+		Replay replay = new Replay(recording, sim);
+
+		long start = System.nanoTime();
+		int ticks = recording.getTicks();
+		for (int t = 0; t < ticks; t++) {
+			replay.prepare(t, true);
+			replay.apply(t);
+		}
+		long time = System.nanoTime() - start;
+
+		float simulated = ticks * Simulation.tickLength / 1000f;
+		float seconds = time / 1000000000f;
+		System.out.println("Replayed " + simulated + " s in " + seconds + " s (" + (simulated / seconds)
+				+ "x realtime), " + replay.laps + " laps");
+		float dx = sim.car.getTranslation().x - recording.end[0];
+		float dy = sim.car.getTranslation().y - recording.end[1];
+		float deviation = (float) Math.sqrt(dx * dx + dy * dy);
+		if (deviation <= positionTolerance) {
+			System.out.println("End position matches the recording");
+		} else {
+			System.out.println("End position is " + deviation + " off the recording");
+		}
+	}
+}
@@ -0,0 +1,166 @@
+package cars;
+
+/**
+ * Uniform grid over the static wall edges of a track. Built once, read only
+ * afterwards, so it can be shared between simulations. Callers bring their
+ * own mark array to skip segments that span several cells.
+ */
+public class SegmentGrid {
+	final float[] ax, ay, ex, ey;
+	final float minX, minY, maxX, maxY;
+	final float cellSize, invCellSize;
+	final int columns, rows;
+	final int[] cellStart;
+	final int[] cellSegments;
+
+	/**
+	 * segments holds x0, y0, x1, y1 for every edge.
+	 */
+	public SegmentGrid(float[] segments, float cellSize) {
+		int segmentCount = segments.length / 4;
+		ax = new float[segmentCount];
+		ay = new float[segmentCount];
+		ex = new float[segmentCount];
+		ey = new float[segmentCount];
+		float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+		float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+		for (int s = 0; s < segmentCount; s++) {
+			ax[s] = segments[4 * s];
+			ay[s] = segments[4 * s + 1];
+			ex[s] = segments[4 * s + 2] - ax[s];
+			ey[s] = segments[4 * s + 3] - ay[s];
+			minX = Math.min(minX, Math.min(ax[s], segments[4 * s + 2]));
+			minY = Math.min(minY, Math.min(ay[s], segments[4 * s + 3]));
+			maxX = Math.max(maxX, Math.max(ax[s], segments[4 * s + 2]));
+			maxY = Math.max(maxY, Math.max(ay[s], segments[4 * s + 3]));
+		}
+		this.minX = minX;
+		this.minY = minY;
+		this.cellSize = cellSize;
+		this.invCellSize = 1 / cellSize;
+		columns = Math.max(1, (int) Math.ceil((maxX - minX) * invCellSize));
+		rows = Math.max(1, (int) Math.ceil((maxY - minY) * invCellSize));
+		this.maxX = minX + columns * cellSize;
+		this.maxY = minY + rows * cellSize;
+
+		// Compressed row layout: count the segments per cell, then fill
+		int cellCount = columns * rows;
+		cellStart = new int[cellCount + 1];
+		int[] bounds = new int[4 * segmentCount];
+		for (int i = 0; i < segmentCount; i++) {
+			bounds[4 * i] = column(Math.min(ax[i], ax[i] + ex[i]));
+			bounds[4 * i + 1] = column(Math.max(ax[i], ax[i] + ex[i]));
+			bounds[4 * i + 2] = row(Math.min(ay[i], ay[i] + ey[i]));
+			bounds[4 * i + 3] = row(Math.max(ay[i], ay[i] + ey[i]));
+			for (int y = bounds[4 * i + 2]; y <= bounds[4 * i + 3]; y++) {
+				for (int x = bounds[4 * i]; x <= bounds[4 * i + 1]; x++) {
+					cellStart[y * columns + x + 1]++;
+				}
+			}
+		}
+		for (int i = 0; i < cellCount; i++) {
+			cellStart[i + 1] += cellStart[i];
+		}
+		cellSegments = new int[cellStart[cellCount]];
+		int[] cursor = new int[cellCount];
+		System.arraycopy(cellStart, 0, cursor, 0, cellCount);
+		for (int i = 0; i < segmentCount; i++) {
+			for (int y = bounds[4 * i + 2]; y <= bounds[4 * i + 3]; y++) {
+				for (int x = bounds[4 * i]; x <= bounds[4 * i + 1]; x++) {
+					cellSegments[cursor[y * columns + x]++] = i;
+				}
+			}
+		}
+	}
+
+	private int column(float x) {
+		return Math.min(columns - 1, Math.max(0, (int) ((x - minX) * invCellSize)));
+	}
+
+	private int row(float y) {
+		return Math.min(rows - 1, Math.max(0, (int) ((y - minY) * invCellSize)));
+	}
+
+	public int getSegmentCount() {
+		return ax.length;
+	}
+
+	/**
+	 * Distance along the unit direction (dx, dy) to the closest edge, or -1 if
+	 * the ray leaves the grid without a hit. marks needs one entry per segment
+	 * and must not contain mark yet.
+	 */
+	public float raycast(float ox, float oy, float dx, float dy, int[] marks, int mark) {
+		// Clip the ray against the grid bounds
+		float tEnter = 0, tExit = Float.MAX_VALUE;
+		if (dx != 0) {
+			float t0 = (minX - ox) / dx, t1 = (maxX - ox) / dx;
+			tEnter = Math.max(tEnter, Math.min(t0, t1));
+			tExit = Math.min(tExit, Math.max(t0, t1));
+		} else if (ox < minX || ox > maxX) {
+			return -1;
+		}
+		if (dy != 0) {
+			float t0 = (minY - oy) / dy, t1 = (maxY - oy) / dy;
+			tEnter = Math.max(tEnter, Math.min(t0, t1));
+			tExit = Math.min(tExit, Math.max(t0, t1));
+		} else if (oy < minY || oy > maxY) {
+			return -1;
+		}
+		if (tEnter > tExit) {
+			return -1;
+		}
+
+		int cx = column(ox + dx * tEnter);
+		int cy = row(oy + dy * tEnter);
+		int stepX = dx > 0 ? 1 : -1;
+		int stepY = dy > 0 ? 1 : -1;
+		float tDeltaX = dx != 0 ? cellSize / Math.abs(dx) : Float.MAX_VALUE;
+		float tDeltaY = dy != 0 ? cellSize / Math.abs(dy) : Float.MAX_VALUE;
+		float tMaxX = dx != 0 ? (minX + (cx + (dx > 0 ? 1 : 0)) * cellSize - ox) / dx : Float.MAX_VALUE;
+		float tMaxY = dy != 0 ? (minY + (cy + (dy > 0 ? 1 : 0)) * cellSize - oy) / dy : Float.MAX_VALUE;
+
+		float best = Float.MAX_VALUE;
+		while (true) {
+			int cell = cy * columns + cx;
+			for (int k = cellStart[cell], end = cellStart[cell + 1]; k < end; k++) {
+				int s = cellSegments[k];
+				if (marks[s] == mark) {
+					continue;
+				}
+				marks[s] = mark;
+				float denom = dx * ey[s] - dy * ex[s];
+				if (denom == 0) {
+					continue;
+				}
+				float px = ax[s] - ox, py = ay[s] - oy;
+				float t = (px * ey[s] - py * ex[s]) / denom;
+				float u = (px * dy - py * dx) / denom;
+				if (t >= 0 && u >= 0 && u <= 1 && t < best) {
+					best = t;
+				}
+			}
+			// Anything in a later cell is at least this far away
+			if (tMaxX < tMaxY) {
+				if (best <= tMaxX) {
+					return best;
+				}
+				cx += stepX;
+				if (cx < 0 || cx >= columns) {
+					break;
+				}
+				tMaxX += tDeltaX;
+			} else {
+				if (best <= tMaxY) {
+					return best;
+				}
+				cy += stepY;
+				if (cy < 0 || cy >= rows) {
+					break;
+				}
+				tMaxY += tDeltaY;
+			}
+		}
+		return best < Float.MAX_VALUE ? best : -1;
+	}
+}
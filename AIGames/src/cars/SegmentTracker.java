@@ -0,0 +1,86 @@
+package cars;
+
+import math.VecMath;
+import vector.Vector2f;
+
+public class SegmentTracker {
+	final Track track;
+	final TrackIndex index;
+	Vector2f lastTP, nextTP, trackDir;
+	int currentSegment = 0;
+	boolean forward = true;
+	float progress;
+	boolean nextLap;
+	Vector2f cA = new Vector2f(), cB = new Vector2f();
+
+	public SegmentTracker(Track track) {
+		this.track = track;
+		this.index = track.getIndex();
+		lastTP = new Vector2f();
+		nextTP = new Vector2f();
+		trackDir = new Vector2f();
+		setSegment(0);
+	}
+
+	public void update(Car c) {
+		int segmentCount = track.segmentCount;
+		Vector2f pos = c.getTranslation();
+		int segment = index.segmentAt(pos.x, pos.y);
+		if (segment != currentSegment) {
+			if (segment == (currentSegment + 1) % segmentCount) {
+				if (segment == 0) {
+					nextLap = forward;
+					forward = true;
+				}
+			} else if (currentSegment == (segment + 1) % segmentCount) {
+				if (currentSegment == 0) {
+					forward = false;
+				}
+			}
+			// Anything else is a jump, e.g. a teleport, and counts as no lap
+			setSegment(segment);
+		}
+		updateProgress(pos);
+	}
+
+	/**
+	 * Looks the segment up from scratch after the car was moved, without
+	 * counting a lap.
+	 */
+	public void relocate(Car c) {
+		Vector2f pos = c.getTranslation();
+		setSegment(index.segmentAt(pos.x, pos.y));
+		updateProgress(pos);
+	}
+
+	private void setSegment(int segment) {
+		currentSegment = segment;
+		lastTP.set(track.trackpoints[segment]);
+		nextTP.set(track.trackpoints[(segment + 1) % track.segmentCount]);
+		if(forward) {
+			trackDir.set(nextTP.x - lastTP.x, nextTP.y - lastTP.y);
+		}
+		else {
+			trackDir.set(lastTP.x - nextTP.x, lastTP.y - nextTP.y);
+		}
+		trackDir.normalize();
+	}
+
+	private void updateProgress(Vector2f pos) {
+		cA.set(pos.x - lastTP.x, pos.y - lastTP.y);
+		cB.set(pos.x - nextTP.x, pos.y - nextTP.y);
+		// Every segment counts the same, no matter how long it is
+		int segmentCount = track.segmentCount;
+		float segmentFactor = track.tracklengths[currentSegment] * segmentCount;
+		if(forward) {
+			progress = currentSegment / (float) segmentCount + VecMath.dotproduct(cA, trackDir) / segmentFactor;
+		}
+		else {
+			progress = -((segmentCount - currentSegment - 1) / (float) segmentCount + VecMath.dotproduct(cB, trackDir) / segmentFactor);
+		}
+	}
+
+	public float getProgress() {
+		return progress;
+	}
+}
@@ -0,0 +1,42 @@
+package cars;
+
+import java.util.Arrays;
+
+import objects.Ray2;
+import vector.Vector2f;
+
+/**
+ * Answers all distance sensors of a car against the static track walls in
+ * one call. The grid is shared, the marks are private to this caster.
+ */
+public class SensorCaster {
+	final SegmentGrid grid;
+	final int[] marks;
+	int mark = 0;
+
+	public SensorCaster(SegmentGrid grid) {
+		this.grid = grid;
+		marks = new int[grid.getSegmentCount()];
+	}
+
+	/**
+	 * Writes the hit distance of every ray into distances, -1 for a miss.
+	 * Returns the number of misses.
+	 */
+	public int cast(Ray2[] rays, float[] distances) {
+		int misses = 0;
+		for (int i = 0; i < rays.length; i++) {
+			if (++mark == Integer.MAX_VALUE) {
+				Arrays.fill(marks, 0);
+				mark = 1;
+			}
+			Vector2f p = rays[i].getPosition();
+			Vector2f d = rays[i].getDirection();
+			distances[i] = grid.raycast(p.x, p.y, d.x, d.y, marks, mark);
+			if (distances[i] < 0) {
+				misses++;
+			}
+		}
+		return misses;
+	}
+}
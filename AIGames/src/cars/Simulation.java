@@ -0,0 +1,772 @@
+package cars;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import javax.management.JMException;
+
+import ai.Activation;
+import ai.BackgroundTrainer;
+import ai.CheckpointWriter;
+import ai.Inference;
+import ai.NetworkFile;
+import ai.NeuralNetwork;
+import ai.QuantizedNetwork;
+import ai.ReplayBuffer;
+import broadphase.DynamicAABBTree2;
+import integration.VerletIntegration;
+import manifold.MultiPointManifoldManager2;
+import manifold.RaycastResult;
+import math.VecMath;
+import narrowphase.EPA2;
+import narrowphase.GJK2;
+import narrowphase.SupportRaycast2;
+import objects.Ray2;
+import objects.RigidBody;
+import physics.PhysicsSpace2;
+import positionalcorrection.ProjectionCorrection;
+import quaternion.Complexf;
+import resolution.ImpulseResolution;
+import vector.Vector2f;
+
+/**
+ * Physics world, car and trainer without any GL objects. Game renders it,
+ * HeadlessStart steps it as fast as possible.
+ */
+public class Simulation {
+	public final static int tickLength = 16;
+
+	PhysicsSpace2 space;
+	Track track;
+	List<Wall> walls;
+	Car car;
+	int mode = 1;
+	final static int numRaycasts = 10;
+	float[] raycastDistances;
+	Vector2f[] raycastHits;
+	boolean manualUp, manualDown, manualLeft, manualRight;
+	boolean inputUp, inputDown, inputLeft, inputRight;
+
+	final String nnFilepath;
+	NeuralNetwork nn;
+	Random random;
+	int nnInputs = numRaycasts + 8;
+	float undefinedRayDistance = 0;
+	boolean lastLeft = false, lastRight = false, lastUp = false, lastDown = false;
+	float lastVelocity = 0;
+
+	int trainingtimer = 0;
+	int controltimer = 0;
+	final int timeBetweenSplits = 0;
+	final int minSplitLength = 3000;
+	final int maxSplitLength = 8000;
+	final int maxControllLength = 3000;
+	final int splitLengthInterval = maxSplitLength - minSplitLength;
+	final int maxIterationsInTimeline = maxSplitLength / 16;
+	int splitlength;
+	int controllength;
+	int timeline = 0;
+	int trainingsIterationsSinceSave = 0;
+	final int savingInterval = 1000;
+	long savingIntervalCount = 0;
+	final int keptCheckpoints = 5;
+	CheckpointWriter checkpointWriter;
+	ActionTrace firstTimelineActions;
+	float velocityAfterInterval;
+	float summedVelocityInTimeline1, summedVelocityInTimeline2;
+	float progressAtStart, progressAfterTimeline1, progressAfterTimeline2;
+	boolean nextLapTimeline1, nextLapTimeline2;
+	WorldSnapshot split = new WorldSnapshot(1);
+	float[] inputsOnSplit;
+	float[] expectedOutputs;
+	boolean firstIterationOfTimeline = true;
+	Vector2f[] trackpoints;
+	SegmentTracker tracker;
+	boolean learndSomethingInSavingInterval = false;
+	InputRecording recording;
+	// Train on a background thread from a replay buffer instead of one backprop per won split
+	boolean useReplay = Boolean.getBoolean("cars.replay");
+	final int replayCapacity = 100000;
+	final int replayBatchSize = 32;
+	final int replayBatchesPerSample = 4;
+	BackgroundTrainer backgroundTrainer;
+	long trainerVersion = 0;
+	final int populationSize = 64;
+	// Metrics read it from other threads
+	volatile EvolutionTrainer evolution;
+	long evolutionVersion = 0;
+	SimulationMetrics metrics;
+	final TrainingLog log;
+	final int logCapacity = 1024;
+
+	// normalization
+	final static float maxVelocity = 601;
+	final static float halfMaxVelocity = maxVelocity / 2f;
+	final static float maxSightRange = 2000;
+	final static float halfMaxSightRange = maxSightRange / 2f;
+
+	public Simulation(String nnFilepath, boolean render) {
+		this(nnFilepath, null, render);
+	}
+
+	public Simulation(String nnFilepath, NeuralNetwork nn, boolean render) {
+		this(nnFilepath, nn, TrackPool.getDefault(), render);
+	}
+
+	public Simulation(String nnFilepath, NeuralNetwork nn, Track track, boolean render) {
+		this.nnFilepath = nnFilepath;
+		log = new TrainingLog(nnFilepath != null ? nnFilepath : "Simulation", logCapacity);
+		space = createSpace();
+
+		initTrack(track, render);
+		car = new Car(trackpoints[0].x, trackpoints[0].y, numRaycasts, render);
+		for (int i = 0; i < numRaycasts; i++) {
+			space.addRaycastFilter(car.getBody(), car.rays[i]);
+		}
+		space.addRigidBody(car, car.getBody());
+
+		raycastDistances = new float[numRaycasts];
+		raycastHits = new Vector2f[numRaycasts];
+		for (int i = 0; i < numRaycasts; i++) {
+			raycastDistances[i] = undefinedRayDistance;
+			raycastHits[i] = new Vector2f();
+		}
+		rayrotation.rotate(360 / (float) numRaycasts);
+
+		int nnInputcount = nnInputs;
+		int nnOutputcount = 4;
+		if (nn != null) {
+			this.nn = nn;
+		} else {
+			this.nn = new NeuralNetwork(new int[] { nnInputcount, 30, 30, 30, 10, nnOutputcount });
+			if (nnFilepath != null) {
+				savingIntervalCount = loadNetwork(this.nn, nnFilepath);
+			}
+			// Overrides the activation of the loaded network, the checkpoints keep it from then on
+			Activation activation = activationFromProperties();
+			if (activation != null) {
+				this.nn.setActivation(activation);
+			}
+		}
+
+		inputsOnSplit = new float[nnInputcount];
+		expectedOutputs = new float[nnOutputcount];
+		nnOuts = new float[nnOutputcount];
+		workspace = this.nn.createWorkspace();
+		firstTimelineActions = new ActionTrace(maxIterationsInTimeline);
+		random = new Random();
+	}
+
+	static PhysicsSpace2 createSpace() {
+		return new PhysicsSpace2(new VerletIntegration(), new DynamicAABBTree2(), new GJK2(new EPA2()),
+				new SupportRaycast2(), new ImpulseResolution(), new ProjectionCorrection(1),
+				new MultiPointManifoldManager2());
+	}
+
+	/**
+	 * The activation named by the system property cars.activation, e.g.
+	 * FAST_TANH, for every layer of the network a simulation creates or loads.
+	 * Null if it isn't set or unknown, then a new network uses tanh and a
+	 * loaded one the activations of its file.
+	 */
+	static Activation activationFromProperties() {
+		String value = System.getProperty("cars.activation");
+		if (value == null) {
+			return null;
+		}
+		try {
+			return Activation.valueOf(value);
+		} catch (IllegalArgumentException e) {
+			System.out.println("Unknown activation " + value + ", keeping the network's");
+			return null;
+		}
+	}
+
+	static long loadNetwork(NeuralNetwork nn, String nnFilepath) {
+		File binary = new File(nnFilepath + NetworkFile.extension);
+		if (binary.exists()) {
+			try {
+				return NetworkFile.read(nn, binary);
+			} catch (IOException e) {
+				System.out.println("Couldn't read " + binary + ": " + e.getMessage() + " Trying text file.");
+			}
+		}
+		long savingIntervalCount = 0;
+		BufferedReader br = null;
+		try {
+			br = new BufferedReader(new FileReader(nnFilepath));
+			savingIntervalCount = nn.parse(br);
+			br.close();
+		} catch (IOException e) {
+			System.out.println("Couldn't find input file! Starting with random NN.");
+		}
+		return savingIntervalCount;
+	}
+
+	private void initTrack(Track track, boolean render) {
+		this.track = track;
+		walls = track.addTo(space, render);
+		sensorCaster = new SensorCaster(track.getSensorGrid());
+		trackpoints = track.getTrackpoints();
+		tracker = new SegmentTracker(track);
+	}
+
+	private Complexf rayrotation = new Complexf();
+	private Vector2f lastdirection = new Vector2f();
+	private Vector2f raystart = new Vector2f();
+
+	boolean errorstop = false;
+	boolean useSensorCaster = true;
+	SensorCaster sensorCaster;
+
+	private void setupRay(Car c, int i) {
+		Ray2 ray = c.rays[i];
+		ray.getDirection().set(lastdirection);
+		raystart.set(c.raystartpoints[i]);
+		raystart.transform(c.getRotation());
+		raystart.translate(c.getTranslation());
+		ray.getPosition().set(raystart);
+	}
+
+	private void singleRaycast(Car c, int i) {
+		RaycastResult<Vector2f> rr = space.raycast(c.rays[i]);
+		if (rr != null) {
+			raycastHits[i].set(rr.getHitPosition());
+			raycastDistances[i] = rr.getHitDistance();
+		} else {
+			rayMissed(c, i);
+		}
+	}
+
+	private void rayMissed(Car c, int i) {
+		Ray2 ray = c.rays[i];
+		raycastDistances[i] = undefinedRayDistance;
+		if (metrics != null) {
+			metrics.rayMisses++;
+		}
+		errorstop = true;
+		mode = 1;
+		Set<RigidBody<Vector2f, ?, Complexf, ?>> overlaps = space.raycastAllBroadphase(ray);
+		Vector2f position = c.getTranslation();
+		Vector2f direction = ray.getDirection();
+		log.log(TrainingLog.rayMiss, i, position.x, position.y, direction.x, direction.y, overlaps.size(),
+				trainingsIterationsSinceSave, 0);
+		boolean logOverlaps = log.isEnabled(TrainingLog.rayOverlap);
+		Iterator<RigidBody<Vector2f, ?, Complexf, ?>> it = overlaps.iterator();
+		for(int j = 0; j < overlaps.size(); j++) {
+			RigidBody<Vector2f, ?, Complexf, ?> rb = it.next();
+			if (logOverlaps) {
+				log.log(TrainingLog.rayOverlap, j, rb.getTranslation().x, rb.getTranslation().y);
+			}
+			if(Math.random() > 0.5) {
+				raycastHits[i].set(rb.getTranslation());
+			}
+		}
+		if(Math.random() > 0.7) {
+			Vector2f d = new Vector2f(ray.getDirection());
+			d.scale(50);
+			d.translate(c.getTranslation());
+			raycastHits[i].set(d);
+		}
+		if(Math.random() > 0.85) {
+			raycastHits[i].set(ray.getPosition());
+		}
+	}
+
+	void doRaycasts(Car c) {
+		lastdirection.set(c.direction);
+		setupRay(c, 0);
+		for (int i = 1; i < numRaycasts; i++) {
+			lastdirection.transform(rayrotation);
+			setupRay(c, i);
+		}
+		if (useSensorCaster) {
+			sensorCaster.cast(c.rays, raycastDistances);
+			for (int i = 0; i < numRaycasts; i++) {
+				if (raycastDistances[i] >= 0) {
+					Vector2f p = c.rays[i].getPosition();
+					Vector2f d = c.rays[i].getDirection();
+					raycastHits[i].set(p.x + d.x * raycastDistances[i], p.y + d.y * raycastDistances[i]);
+				} else {
+					rayMissed(c, i);
+				}
+			}
+		} else {
+			for (int i = 0; i < numRaycasts; i++) {
+				singleRaycast(c, i);
+			}
+		}
+	}
+
+	float[] nnIns = new float[nnInputs];
+	float[] nnOuts;
+	Inference.Workspace workspace;
+	QuantizedNetwork quantized;
+	QuantizedNetwork.Workspace quantizedWorkspace;
+
+	/**
+	 * Writes the network inputs for the current state of the car into nnIns.
+	 * Needs the raycasts and the tracker of this tick.
+	 */
+	void fillNetworkInputs() {
+		fillNetworkInputs(car, tracker, raycastDistances, lastUp, lastDown, lastLeft, lastRight, nnIns, 0, 1);
+	}
+
+	/**
+	 * Writes the network inputs of car c to out, input i at offset + i *
+	 * stride. A stride of 1 gives one input vector, the number of cars gives
+	 * a column of a BatchInference matrix.
+	 */
+	static void fillNetworkInputs(Car c, SegmentTracker tracker, float[] distances, boolean up, boolean down,
+			boolean left, boolean right, float[] out, int offset, int stride) {
+		Vector2f velocity = c.getBody().getLinearVelocity();
+		for (int i = 0; i < numRaycasts; i++) {
+			out[offset + i * stride] = Math.min(distances[i], maxSightRange) / halfMaxSightRange - 1;
+		}
+		int o = offset + numRaycasts * stride;
+		out[o] = (float) velocity.length() / halfMaxVelocity - 1;
+		out[o += stride] = VecMath.dotproduct(velocity, c.direction) >= 0 ? 1 : -1;
+		out[o += stride] = up ? 1 : -1;
+		out[o += stride] = down ? 1 : -1;
+		out[o += stride] = left ? 1 : -1;
+		out[o += stride] = right ? 1 : -1;
+		float forwardfactor = tracker.forward ? 1 : -1;
+		out[o += stride] = (forwardfactor * VecMath.dotproduct(c.direction, tracker.trackDir) > 0) ? 1 : -1;
+		out[o += stride] = (forwardfactor * VecMath.dotproduct(velocity, tracker.trackDir) > 0) ? 1 : -1;
+	}
+
+	/**
+	 * Drives with an int8 copy of the current network in mode 2, or with the
+	 * float network again. The copy doesn't follow later training.
+	 */
+	public void setQuantized(boolean on) {
+		if (on) {
+			quantized = new QuantizedNetwork(nn);
+			quantizedWorkspace = quantized.createWorkspace();
+		} else {
+			quantized = null;
+		}
+	}
+
+	public void update(int delta) {
+		if (mode != 4 && evolution != null) {
+			stopEvolution();
+		}
+		if (backgroundTrainer != null) {
+			trainerVersion = backgroundTrainer.sync(nn, trainerVersion);
+		}
+		if (mode == 4) {
+			if (evolution == null) {
+				evolution = createEvolution(populationSize, Runtime.getRuntime().availableProcessors());
+				evolution.start();
+			}
+			evolutionVersion = evolution.getPublisher().sync(nn, evolutionVersion);
+		}
+		SimulationMetrics metrics = this.metrics;
+		if (metrics != null) {
+			metrics.beginTick();
+		}
+		long time = metrics != null ? System.nanoTime() : 0;
+		car.update();
+		if (metrics != null) {
+			time = metrics.record(SimulationMetrics.carUpdate, time);
+		}
+		doRaycasts(car);
+		if (metrics != null) {
+			time = metrics.record(SimulationMetrics.raycasts, time);
+		}
+		tracker.update(car);
+		if (metrics != null) {
+			time = metrics.record(SimulationMetrics.updateSegment, time);
+		}
+		if (mode == 1) {
+			passCarInputs(manualUp, manualDown, manualLeft, manualRight);
+		} else {
+			if (mode != 3 || timeline < 2 || firstIterationOfTimeline) {
+				fillNetworkInputs();
+				if (metrics != null) {
+					time = System.nanoTime();
+				}
+				if (mode == 2 && quantized != null) {
+					quantized.infer(nnIns, quantizedWorkspace, nnOuts);
+				} else {
+					nn.infer(nnIns, workspace, nnOuts);
+				}
+				if (metrics != null) {
+					metrics.record(SimulationMetrics.feedForward, time);
+				}
+				lastUp = nnOuts[0] > 0;
+				lastDown = nnOuts[1] > 0;
+				lastLeft = nnOuts[2] > 0;
+				lastRight = nnOuts[3] > 0;
+			}
+
+			if (mode == 2 || mode == 4) {
+				// Mode 4 shows the best network evolved so far
+				passCarInputs(lastUp, lastDown, lastLeft, lastRight);
+			} else if (mode == 3) {
+				// 1. Split in two timelines: one with NN action, one with random action
+				// 2. Compare Timelines after time interval
+				trainingtimer += delta;
+				if (timeline == 0) {
+					passCarInputs(lastUp, lastDown, lastLeft, lastRight);
+					if (trainingtimer >= timeBetweenSplits) {
+						split.capture(car, tracker);
+						recordEvent(InputRecording.capture, 0);
+						timeline++;
+						trainingtimer = 0;
+						firstTimelineActions.clear();
+						summedVelocityInTimeline1 = 0;
+						summedVelocityInTimeline2 = 0;
+						tracker.nextLap = false;
+						progressAtStart = tracker.progress;
+						splitlength = minSplitLength + (int) (random.nextFloat() * splitLengthInterval);
+						controllength = (int) (random.nextFloat() * maxControllLength);
+					}
+				} else if (timeline == 1) {
+					passCarInputs(lastUp, lastDown, lastLeft, lastRight);
+					if (!firstIterationOfTimeline) {
+						firstTimelineActions.append(lastUp, lastDown, lastLeft, lastRight);
+						summedVelocityInTimeline1 += car.getBody().getLinearVelocity().length();
+					} else {
+						System.arraycopy(nnIns, 0, inputsOnSplit, 0, nnIns.length);
+						firstIterationOfTimeline = false;
+					}
+					if (trainingtimer >= splitlength) {
+						progressAfterTimeline1 = tracker.progress;
+						nextLapTimeline1 = tracker.nextLap;
+						split.restore(car, tracker);
+						recordEvent(InputRecording.restore, 0);
+						tracker.nextLap = false;
+						timeline++;
+						trainingtimer = 0;
+						firstIterationOfTimeline = true;
+					}
+				} else if (timeline == 2) {
+					if (firstIterationOfTimeline) {
+						if (random.nextFloat() < 0.9) {
+							int modifiyInput = (int) (random.nextFloat() * 4);
+							switch (modifiyInput) {
+							case 0:
+								lastUp = !lastUp;
+								nnOuts[0] = lastUp ? 1 : -1;
+								break;
+							case 1:
+								lastDown = !lastDown;
+								nnOuts[1] = lastDown ? 1 : -1;
+								break;
+							case 2:
+								lastLeft = !lastLeft;
+								nnOuts[2] = lastLeft ? 1 : -1;
+								break;
+							case 3:
+								lastRight = !lastRight;
+								nnOuts[3] = lastRight ? 1 : -1;
+								break;
+							}
+						} else {
+							lastUp = random.nextFloat() < 0.5;
+							lastDown = random.nextFloat() < 0.5;
+							lastLeft = random.nextFloat() < 0.5;
+							lastRight = random.nextFloat() < 0.5;
+							nnOuts[0] = lastUp ? 1 : -1;
+							nnOuts[1] = lastDown ? 1 : -1;
+							nnOuts[2] = lastLeft ? 1 : -1;
+							nnOuts[3] = lastRight ? 1 : -1;
+						}
+						System.arraycopy(nnOuts, 0, expectedOutputs, 0, nnOuts.length);
+						firstIterationOfTimeline = false;
+					} else {
+						summedVelocityInTimeline2 += car.getBody().getLinearVelocity().length();
+						int action = firstTimelineActions.removeFirst();
+						if (controltimer < controllength) {
+							controltimer += delta;
+						} else {
+							lastUp = (action & ActionTrace.up) != 0;
+							lastDown = (action & ActionTrace.down) != 0;
+							lastLeft = (action & ActionTrace.left) != 0;
+							lastRight = (action & ActionTrace.right) != 0;
+						}
+					}
+					passCarInputs(lastUp, lastDown, lastLeft, lastRight);
+					if (trainingtimer >= splitlength) {
+						progressAfterTimeline2 = tracker.progress;
+						nextLapTimeline2 = tracker.nextLap;
+						float progressTimeline1 = progressAfterTimeline1 - progressAtStart;
+						float progressTimeline2 = progressAfterTimeline2 - progressAtStart;
+						if (progressTimeline1 < progressTimeline2 && progressTimeline2 > 0 || (!nextLapTimeline1 && nextLapTimeline2)) {
+							log.log(TrainingLog.splitWon, progressTimeline1, progressTimeline2, nextLapTimeline1 ? 1 : 0,
+									nextLapTimeline2 ? 1 : 0, expectedOutputs[0], expectedOutputs[1], expectedOutputs[2],
+									expectedOutputs[3]);
+							if (metrics != null) {
+								time = System.nanoTime();
+							}
+							learn(inputsOnSplit, expectedOutputs, progressTimeline2 - progressTimeline1);
+							if (metrics != null) {
+								metrics.record(useReplay ? SimulationMetrics.replayAdd : SimulationMetrics.backProp, time);
+								metrics.wins++;
+							}
+							learndSomethingInSavingInterval = true;
+						}
+						if (metrics != null) {
+							metrics.splits++;
+						}
+						split.restore(car, tracker);
+						recordEvent(InputRecording.restore, 0);
+						timeline = 0;
+						controltimer = 0;
+						trainingtimer = 0;
+						firstIterationOfTimeline = true;
+
+						trainingsIterationsSinceSave++;
+						if (trainingsIterationsSinceSave >= savingInterval) {
+							if (metrics != null) {
+								time = System.nanoTime();
+							}
+							save();
+							if (metrics != null) {
+								metrics.record(SimulationMetrics.checkpoint, time);
+							}
+							trainingsIterationsSinceSave = 0;
+							if (!learndSomethingInSavingInterval) {
+								int point = random.nextInt(trackpoints.length);
+								log.log(TrainingLog.learnedNothing, point, trackpoints[point].x, trackpoints[point].y);
+								car.getTranslation().set(trackpoints[point]);
+								tracker.relocate(car);
+								recordEvent(InputRecording.teleport, point);
+							}
+							learndSomethingInSavingInterval = false;
+						}
+					}
+				}
+			}
+		}
+		if (recording != null) {
+			recording.halted(errorstop);
+		}
+		if(!errorstop) {
+			if (metrics != null) {
+				time = System.nanoTime();
+			}
+			space.update(delta);
+			if (metrics != null) {
+				metrics.record(SimulationMetrics.physics, time);
+			}
+		}
+		if (metrics != null) {
+			metrics.ticks++;
+		}
+	}
+
+	/**
+	 * Starts collecting phase timings and training counters and registers
+	 * them as an MBean under name.
+	 */
+	public SimulationMetrics enableMetrics(String name) {
+		metrics = new SimulationMetrics(name, this);
+		try {
+			metrics.register();
+		} catch (JMException e) {
+			System.out.println("Couldn't register metrics " + name + ": " + e.getMessage());
+		}
+		return metrics;
+	}
+
+	/**
+	 * Enables metrics if the system property cars.metrics is set. Its value
+	 * is a CSV file that gets a row every cars.metrics.period ms (default
+	 * 5000), or empty for JMX only.
+	 */
+	public void enableMetricsFromProperties(String name) {
+		String csv = System.getProperty("cars.metrics");
+		if (csv == null) {
+			return;
+		}
+		SimulationMetrics m = enableMetrics(name);
+		if (!csv.isEmpty()) {
+			long period = Long.getLong("cars.metrics.period", 5000);
+			try {
+				m.startCsvDump(new File(csv), period);
+			} catch (IOException e) {
+				System.out.println("Couldn't write metrics to " + csv + ": " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Configures the training log from the system properties cars.log, a
+	 * file the events are appended to, and cars.log.level, one of debug,
+	 * info, warn and off (default info).
+	 */
+	public void configureLogFromProperties() {
+		String level = System.getProperty("cars.log.level");
+		if (level != null) {
+			if (level.equals("debug")) {
+				log.setLevel(TrainingLog.debug);
+			} else if (level.equals("warn")) {
+				log.setLevel(TrainingLog.warn);
+			} else if (level.equals("off")) {
+				log.setLevel(TrainingLog.off);
+			} else {
+				log.setLevel(TrainingLog.info);
+			}
+		}
+		String file = System.getProperty("cars.log");
+		if (file != null) {
+			try {
+				log.setFile(new File(file));
+			} catch (IOException e) {
+				System.out.println("Couldn't write training log to " + file + ": " + e.getMessage());
+			}
+		}
+	}
+
+	public TrainingLog getLog() {
+		return log;
+	}
+
+	public void disableMetrics() {
+		if (metrics != null) {
+			metrics.stopCsvDump();
+			try {
+				metrics.unregister();
+			} catch (JMException e) {
+			}
+			metrics = null;
+		}
+	}
+
+	/**
+	 * Records every tick from now on until stopRecording.
+	 */
+	public InputRecording startRecording() {
+		recording = new InputRecording(this);
+		return recording;
+	}
+
+	public InputRecording stopRecording() {
+		InputRecording r = recording;
+		recording = null;
+		if (r != null) {
+			r.finish(this);
+		}
+		return r;
+	}
+
+	private void recordEvent(int type, int arg) {
+		if (recording != null) {
+			recording.event(type, arg);
+		}
+	}
+
+	/**
+	 * Trains on a won split. With useReplay the sample goes into the replay
+	 * buffer and the background trainer learns from it, otherwise it is one
+	 * backprop step right here.
+	 */
+	protected void learn(float[] inputs, float[] expected, float progressDelta) {
+		if (!useReplay) {
+			nn.feedForward(inputs);
+			nn.backProp(expected);
+			return;
+		}
+		if (backgroundTrainer == null) {
+			ReplayBuffer buffer = new ReplayBuffer(replayCapacity, inputs.length, expected.length,
+					ReplayBuffer.Eviction.FIFO);
+			backgroundTrainer = new BackgroundTrainer(nn, buffer, replayBatchSize, replayBatchesPerSample);
+			backgroundTrainer.start();
+		}
+		backgroundTrainer.add(inputs, expected, progressDelta);
+	}
+
+	/**
+	 * A mode 4 trainer seeded from nn. It saves next to nnFilepath and counts
+	 * its checkpoints on from the one nn was loaded from.
+	 */
+	EvolutionTrainer createEvolution(int populationSize, int threads) {
+		EvolutionTrainer trainer = new EvolutionTrainer(EvolutionTrainer.evolvedPath(nnFilepath), nn,
+				populationSize, threads);
+		trainer.savingIntervalCount = savingIntervalCount;
+		return trainer;
+	}
+
+	/**
+	 * Stops the evolution when mode 4 is left. nn holds the best evolved
+	 * network now, the background trainer is reseeded from it so it doesn't
+	 * publish its older copy over the evolved weights. Its replay buffer is
+	 * kept.
+	 */
+	void stopEvolution() {
+		evolution.stop();
+		evolution = null;
+		evolutionVersion = 0;
+		if (backgroundTrainer != null) {
+			ReplayBuffer buffer = backgroundTrainer.getBuffer();
+			backgroundTrainer.stop();
+			backgroundTrainer = new BackgroundTrainer(nn, buffer, replayBatchSize, replayBatchesPerSample);
+			backgroundTrainer.start();
+			trainerVersion = 0;
+		}
+	}
+
+	protected void save() {
+		if (nnFilepath == null) {
+			return;
+		}
+		if (checkpointWriter == null) {
+			checkpointWriter = new CheckpointWriter(nnFilepath, keptCheckpoints);
+		}
+		savingIntervalCount++;
+		checkpointWriter.submit(nn, savingIntervalCount);
+	}
+
+	/**
+	 * Stops the evolution and the background trainer, writes the checkpoints
+	 * still queued and closes the log. Every simulation has to be closed, the
+	 * log drainer holds on to its log until then. The simulation isn't
+	 * updated afterwards.
+	 */
+	public void close() {
+		if (evolution != null) {
+			evolution.stop();
+			evolution = null;
+		}
+		if (backgroundTrainer != null) {
+			backgroundTrainer.stop();
+			backgroundTrainer = null;
+		}
+		if (checkpointWriter != null) {
+			checkpointWriter.close();
+			checkpointWriter = null;
+		}
+		log.close();
+	}
+
+	void passCarInputs(boolean up, boolean down, boolean left, boolean right) {
+		inputUp = up;
+		inputDown = down;
+		inputLeft = left;
+		inputRight = right;
+		if (recording != null) {
+			recording.input(up, down, left, right);
+		}
+		if (up) {
+			car.accelerate();
+		}
+		if (down) {
+			car.brake();
+		}
+		if (left) {
+			car.steerLeft();
+		}
+		if (right) {
+			car.steerRight();
+		}
+	}
+}
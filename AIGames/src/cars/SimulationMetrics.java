@@ -0,0 +1,273 @@
+package cars;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import ai.BackgroundTrainer;
+
+/**
+ * Timings of the phases of a tick and training counters of one Simulation.
+ * Every phase has a count, a sum, a maximum and a histogram with power of
+ * two buckets, so recording is a few increments. Only the simulation thread
+ * writes, readers on the JMX or CSV thread may see slightly stale values.
+ * A simulation without metrics only pays a null check per phase.
+ */
+public class SimulationMetrics implements SimulationMetricsMBean {
+	// backProp is a training step on the simulation thread, replayAdd only hands the sample to the
+	// background trainer, whose batches are timed by the trainer itself
+	final static int carUpdate = 0, raycasts = 1, updateSegment = 2, feedForward = 3, backProp = 4, physics = 5,
+			checkpoint = 6, replayAdd = 7;
+	final static String[] phaseNames = { "carUpdate", "doRaycasts", "updateSegment", "feedForward", "backProp",
+			"spaceUpdate", "checkpoint", "replayAdd" };
+	final static int buckets = 64;
+
+	final String name;
+	final Simulation sim;
+	final long[] counts = new long[phaseNames.length];
+	final long[] sums = new long[phaseNames.length];
+	final long[] maxima = new long[phaseNames.length];
+	final long[][] histograms = new long[phaseNames.length][buckets];
+	long ticks, splits, wins, rayMisses;
+	long startTime = System.nanoTime();
+	// Set by reset on the JMX thread, the simulation thread clears at its next tick
+	volatile boolean resetRequested = false;
+
+	ObjectName objectName;
+	Thread csvThread;
+
+	public SimulationMetrics(String name, Simulation sim) {
+		this.name = name;
+		this.sim = sim;
+	}
+
+	/**
+	 * Adds the time since start to phase and returns the current time, so the
+	 * next phase can start from it.
+	 */
+	long record(int phase, long start) {
+		long now = System.nanoTime();
+		long time = now - start;
+		counts[phase]++;
+		sums[phase] += time;
+		if (time > maxima[phase]) {
+			maxima[phase] = time;
+		}
+		histograms[phase][64 - Long.numberOfLeadingZeros(Math.max(time, 1))]++;
+		return now;
+	}
+
+	public void register() throws JMException {
+		objectName = new ObjectName("cars:type=Simulation,name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+	}
+
+	public void unregister() throws JMException {
+		if (objectName != null) {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+			objectName = null;
+		}
+	}
+
+	/**
+	 * Appends a row with the totals so far to file every period on a daemon
+	 * thread.
+	 */
+	public void startCsvDump(final File file, final long periodMillis) throws IOException {
+		final boolean header = !file.exists() || file.length() == 0;
+		final Writer out = new FileWriter(file, true);
+		if (header) {
+			StringBuilder sb = new StringBuilder("time,name,ticks,splits,splitsPerSecond,winRate,rayMisses,replayBatches,replayBatchMeanNs,generationsPerMinute");
+			for (String phase : phaseNames) {
+				sb.append(',').append(phase).append("_count");
+				sb.append(',').append(phase).append("_meanNs");
+				sb.append(',').append(phase).append("_p99Ns");
+				sb.append(',').append(phase).append("_maxNs");
+			}
+			out.write(sb.append('\n').toString());
+			out.flush();
+		}
+		csvThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					while (true) {
+						Thread.sleep(periodMillis);
+						out.write(csvRow());
+						out.flush();
+					}
+				} catch (InterruptedException e) {
+				} catch (IOException e) {
+					e.printStackTrace();
+				} finally {
+					try {
+						out.close();
+					} catch (IOException e) {
+					}
+				}
+			}
+		}, "MetricsCsv-" + name);
+		csvThread.setDaemon(true);
+		csvThread.start();
+	}
+
+	public void stopCsvDump() {
+		if (csvThread != null) {
+			csvThread.interrupt();
+			csvThread = null;
+		}
+	}
+
+	String csvRow() {
+		long[] p99 = getPhaseP99Nanos();
+		StringBuilder sb = new StringBuilder();
+		sb.append(System.currentTimeMillis()).append(',').append(name);
+		sb.append(',').append(ticks).append(',').append(splits);
+		sb.append(',').append(String.format(Locale.ROOT, "%.3f", getSplitsPerSecond()));
+		sb.append(',').append(String.format(Locale.ROOT, "%.4f", getWinRate()));
+		sb.append(',').append(rayMisses).append(',').append(getReplayBatches());
+		sb.append(',').append(String.format(Locale.ROOT, "%.0f", getReplayBatchMeanNanos()));
+		sb.append(',').append(String.format(Locale.ROOT, "%.3f", getGenerationsPerMinute()));
+		for (int p = 0; p < phaseNames.length; p++) {
+			sb.append(',').append(counts[p]);
+			sb.append(',').append(counts[p] > 0 ? sums[p] / counts[p] : 0);
+			sb.append(',').append(p99[p]);
+			sb.append(',').append(maxima[p]);
+		}
+		return sb.append('\n').toString();
+	}
+
+	@Override
+	public String[] getPhaseNames() {
+		return phaseNames.clone();
+	}
+
+	@Override
+	public long[] getPhaseCounts() {
+		return counts.clone();
+	}
+
+	@Override
+	public double[] getPhaseMeanNanos() {
+		double[] means = new double[phaseNames.length];
+		for (int p = 0; p < means.length; p++) {
+			means[p] = counts[p] > 0 ? sums[p] / (double) counts[p] : 0;
+		}
+		return means;
+	}
+
+	/**
+	 * Upper bound of the histogram bucket that holds the 99th percentile.
+	 */
+	@Override
+	public long[] getPhaseP99Nanos() {
+		long[] p99 = new long[phaseNames.length];
+		for (int p = 0; p < p99.length; p++) {
+			long target = (long) Math.ceil(counts[p] * 0.99);
+			long seen = 0;
+			for (int b = 0; b < buckets && target > 0; b++) {
+				seen += histograms[p][b];
+				if (seen >= target) {
+					p99[p] = b >= 63 ? Long.MAX_VALUE : (1L << b) - 1;
+					break;
+				}
+			}
+		}
+		return p99;
+	}
+
+	@Override
+	public long[] getPhaseMaxNanos() {
+		return maxima.clone();
+	}
+
+	@Override
+	public long getTicks() {
+		return ticks;
+	}
+
+	@Override
+	public long getSplits() {
+		return splits;
+	}
+
+	@Override
+	public double getSplitsPerSecond() {
+		return splits * 1e9 / Math.max(1, System.nanoTime() - startTime);
+	}
+
+	/**
+	 * Share of splits where timeline 2 beat timeline 1 and was learned.
+	 */
+	@Override
+	public double getWinRate() {
+		return splits > 0 ? wins / (double) splits : 0;
+	}
+
+	@Override
+	public long getRayMisses() {
+		return rayMisses;
+	}
+
+	@Override
+	public long getReplayBatches() {
+		return sim.backgroundTrainer != null ? sim.backgroundTrainer.getBatches() : 0;
+	}
+
+	@Override
+	public double getReplayBatchMeanNanos() {
+		BackgroundTrainer trainer = sim.backgroundTrainer;
+		if (trainer == null) {
+			return 0;
+		}
+		long batches = trainer.getBatches();
+		return batches > 0 ? trainer.getBatchNanos() / (double) batches : 0;
+	}
+
+	/**
+	 * Generations per minute of the mode 4 evolution, 0 outside mode 4.
+	 */
+	@Override
+	public double getGenerationsPerMinute() {
+		EvolutionTrainer evolution = sim.evolution;
+		return evolution != null ? evolution.getGenerationsPerMinute() : 0;
+	}
+
+	/**
+	 * Asks the simulation thread to clear all timings and counters at the
+	 * start of its next tick, so it never writes into half cleared values.
+	 */
+	@Override
+	public void reset() {
+		resetRequested = true;
+	}
+
+	/**
+	 * Called by the simulation thread before every tick.
+	 */
+	void beginTick() {
+		if (resetRequested) {
+			resetRequested = false;
+			clear();
+		}
+	}
+
+	private void clear() {
+		for (int p = 0; p < phaseNames.length; p++) {
+			counts[p] = 0;
+			sums[p] = 0;
+			maxima[p] = 0;
+			for (int b = 0; b < buckets; b++) {
+				histograms[p][b] = 0;
+			}
+		}
+		ticks = splits = wins = rayMisses = 0;
+		startTime = System.nanoTime();
+	}
+}
@@ -0,0 +1,35 @@
+package cars;
+
+/**
+ * JMX view of SimulationMetrics. Phase arrays are in the order of
+ * getPhaseNames.
+ */
+public interface SimulationMetricsMBean {
+	String[] getPhaseNames();
+
+	long[] getPhaseCounts();
+
+	double[] getPhaseMeanNanos();
+
+	long[] getPhaseP99Nanos();
+
+	long[] getPhaseMaxNanos();
+
+	long getTicks();
+
+	long getSplits();
+
+	double getSplitsPerSecond();
+
+	double getWinRate();
+
+	long getRayMisses();
+
+	long getReplayBatches();
+
+	double getReplayBatchMeanNanos();
+
+	double getGenerationsPerMinute();
+
+	void reset();
+}
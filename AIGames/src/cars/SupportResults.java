@@ -0,0 +1,29 @@
+package cars;
+
+import vector.Vector2f;
+
+/**
+ * Result vectors a support calculator hands out in turn. The engine
+ * transforms a returned vector in place and may hold a few of them at once,
+ * so they cycle through a ring instead of a single shared vector. A ring
+ * belongs to one car or wall, which only lives in the space of one
+ * simulation thread. AllocationCheck compares the ring against fresh
+ * vectors to catch the engine holding more than size of them.
+ */
+class SupportResults {
+	final static int size = 4;
+
+	final Vector2f[] results = new Vector2f[size];
+	int next = 0;
+
+	SupportResults() {
+		for (int i = 0; i < size; i++) {
+			results[i] = new Vector2f();
+		}
+	}
+
+	Vector2f next() {
+		next = (next + 1) & (size - 1);
+		return results[next];
+	}
+}
@@ -0,0 +1,143 @@
+package cars;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import math.VecMath;
+import physics.PhysicsSpace2;
+import vector.Vector2f;
+
+/**
+ * Compiled geometry of a closed track: wall outlines, tangents, segment
+ * lengths, the sensor grid and the segment index. A track is built once and
+ * only read afterwards, so any number of simulations can share it. The walls
+ * are bodies of the physics engine and can't be shared, every simulation
+ * creates its own from the stored outlines.
+ */
+public class Track {
+	final String name;
+	// The file the track was read from, null if built in
+	String file;
+	Vector2f[] trackpoints;
+	float[] trackwidths;
+	Vector2f[] tracktangents;
+	float[] tracklengths;
+	int segmentCount;
+	Vector2f[][] wallCorners;
+	SegmentGrid sensorGrid;
+	TrackIndex index;
+	final static float sensorCellSize = 64;
+
+	public Track(String name, Vector2f[] trackpoints, float[] trackwidths) {
+		this.name = name;
+		this.trackpoints = trackpoints;
+		this.trackwidths = trackwidths;
+		segmentCount = trackpoints.length;
+		tracktangents = new Vector2f[segmentCount];
+		tracklengths = new float[segmentCount];
+		wallCorners = new Vector2f[segmentCount * 2][];
+
+		Vector2f plast = trackpoints[trackpoints.length - 1];
+		Vector2f pb = trackpoints[0];
+		Vector2f pnext = trackpoints[1];
+		for (int i = 0; i < trackpoints.length; i++) {
+			Vector2f pa = pb;
+			float wa = trackwidths[i];
+			pb = pnext;
+			float wb;
+			if (i < trackpoints.length - 1) {
+				wb = trackwidths[i + 1];
+			} else {
+				wb = trackwidths[0];
+			}
+			pnext = trackpoints[(i + 2) % trackpoints.length];
+
+			Vector2f normalA = VecMath.subtraction(pb, plast);
+			tracktangents[i] = new Vector2f(normalA);
+			normalA.set(normalA.y, -normalA.x);
+			normalA.normalize();
+			Vector2f normalB = VecMath.subtraction(pnext, pa);
+			normalB.set(normalB.y, -normalB.x);
+			normalB.normalize();
+
+			tracklengths[i] = (float) VecMath.subtraction(pb, pa).length();
+
+			Vector2f a1 = VecMath.scale(normalA, wa);
+			Vector2f b1 = VecMath.scale(normalA, wa + 20f);
+			Vector2f c1 = VecMath.scale(normalB, wb + 20f);
+			Vector2f d1 = VecMath.scale(normalB, wb);
+
+			a1.translate(pa);
+			b1.translate(pa);
+			c1.translate(pb);
+			d1.translate(pb);
+
+			wallCorners[i * 2] = new Vector2f[] { a1, d1, c1, b1 };
+
+			Vector2f a2 = VecMath.scale(normalA, -wa);
+			Vector2f b2 = VecMath.scale(normalA, -wa + 20f);
+			Vector2f c2 = VecMath.scale(normalB, -wb + 20f);
+			Vector2f d2 = VecMath.scale(normalB, -wb);
+
+			a2.translate(pa);
+			b2.translate(pa);
+			c2.translate(pb);
+			d2.translate(pb);
+
+			wallCorners[i * 2 + 1] = new Vector2f[] { a2, d2, c2, b2 };
+
+			plast = pa;
+		}
+
+		float[] segments = new float[wallCorners.length * 16];
+		int s = 0;
+		for (Vector2f[] c : wallCorners) {
+			for (int i = 0; i < 4; i++) {
+				Vector2f next = c[(i + 1) % 4];
+				segments[s++] = c[i].x;
+				segments[s++] = c[i].y;
+				segments[s++] = next.x;
+				segments[s++] = next.y;
+			}
+		}
+		sensorGrid = new SegmentGrid(segments, sensorCellSize);
+		index = new TrackIndex(trackpoints, trackwidths);
+	}
+
+	/**
+	 * Creates the walls of this track and adds them to space.
+	 */
+	public List<Wall> addTo(PhysicsSpace2 space, boolean render) {
+		List<Wall> walls = new ArrayList<Wall>(wallCorners.length);
+		for (Vector2f[] c : wallCorners) {
+			Wall w = new Wall(c[0], c[1], c[2], c[3], render);
+			space.addRigidBody(w, w.getBody());
+			walls.add(w);
+		}
+		return walls;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getFile() {
+		return file;
+	}
+
+	public Vector2f[] getTrackpoints() {
+		return trackpoints;
+	}
+
+	public float[] getTrackwidths() {
+		return trackwidths;
+	}
+
+	public TrackIndex getIndex() {
+		return index;
+	}
+
+	public SegmentGrid getSensorGrid() {
+		return sensorGrid;
+	}
+}
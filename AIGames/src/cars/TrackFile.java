@@ -0,0 +1,68 @@
+package cars;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import vector.Vector2f;
+
+/**
+ * Text track definition, one track point per line:
+ *
+ * <pre>
+ * # comment
+ * x y halfwidth
+ * </pre>
+ *
+ * The track is closed, the last point connects to the first. The track is
+ * named after the file without extension.
+ */
+public class TrackFile {
+	public final static String extension = ".track";
+
+	public static Track read(File file) throws IOException {
+		List<Vector2f> points = new ArrayList<Vector2f>();
+		List<Float> widths = new ArrayList<Float>();
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			int lineNumber = 0;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+				String[] values = line.split("\\s+");
+				if (values.length != 3) {
+					throw new IOException(file + ":" + lineNumber + ": expected x y halfwidth");
+				}
+				try {
+					points.add(new Vector2f(Float.parseFloat(values[0]), Float.parseFloat(values[1])));
+					widths.add(Float.parseFloat(values[2]));
+				} catch (NumberFormatException e) {
+					throw new IOException(file + ":" + lineNumber + ": " + e.getMessage());
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		if (points.size() < 3) {
+			throw new IOException(file + " has less than 3 track points");
+		}
+		float[] trackwidths = new float[widths.size()];
+		for (int i = 0; i < trackwidths.length; i++) {
+			trackwidths[i] = widths.get(i);
+		}
+		String name = file.getName();
+		if (name.endsWith(extension)) {
+			name = name.substring(0, name.length() - extension.length());
+		}
+		Track track = new Track(name, points.toArray(new Vector2f[points.size()]), trackwidths);
+		track.file = file.getPath();
+		return track;
+	}
+}
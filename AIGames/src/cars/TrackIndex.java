@@ -0,0 +1,165 @@
+package cars;
+
+import java.util.Arrays;
+
+import vector.Vector2f;
+
+/**
+ * Cumulative arc lengths of the track center line plus a uniform grid that
+ * maps a position to the few segments that can be closest to it. Finding the
+ * segment and lap progress of any position is constant time, no matter how
+ * many points the track has or where the car came from.
+ */
+public class TrackIndex {
+	final static int maxCells = 1 << 16;
+
+	final int segmentCount;
+	final float[] ax, ay, ex, ey, lengths;
+	final float[] cumulative;
+	final float totalLength;
+
+	final float minX, minY, cellSize, invCellSize;
+	final int columns, rows;
+	final int[] cellStart;
+	final int[] cellSegments;
+
+	public TrackIndex(Vector2f[] trackpoints, float[] trackwidths) {
+		segmentCount = trackpoints.length;
+		ax = new float[segmentCount];
+		ay = new float[segmentCount];
+		ex = new float[segmentCount];
+		ey = new float[segmentCount];
+		lengths = new float[segmentCount];
+		cumulative = new float[segmentCount + 1];
+		float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+		float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+		float maxWidth = 0, minWidth = Float.MAX_VALUE;
+		for (int i = 0; i < segmentCount; i++) {
+			Vector2f a = trackpoints[i];
+			Vector2f b = trackpoints[(i + 1) % segmentCount];
+			ax[i] = a.x;
+			ay[i] = a.y;
+			ex[i] = b.x - a.x;
+			ey[i] = b.y - a.y;
+			lengths[i] = (float) Math.sqrt(ex[i] * ex[i] + ey[i] * ey[i]);
+			cumulative[i + 1] = cumulative[i] + lengths[i];
+			minX = Math.min(minX, a.x);
+			minY = Math.min(minY, a.y);
+			maxX = Math.max(maxX, a.x);
+			maxY = Math.max(maxY, a.y);
+			maxWidth = Math.max(maxWidth, trackwidths[i]);
+			minWidth = Math.min(minWidth, trackwidths[i]);
+		}
+		totalLength = cumulative[segmentCount];
+
+		// Cover everything a car can reach, the walls are outside the widths
+		float margin = maxWidth + 100;
+		minX -= margin;
+		minY -= margin;
+		maxX += margin;
+		maxY += margin;
+		float size = Math.max(minWidth / 2, 1);
+		while ((maxX - minX) / size * ((maxY - minY) / size) > maxCells) {
+			size *= 2;
+		}
+		this.minX = minX;
+		this.minY = minY;
+		cellSize = size;
+		invCellSize = 1 / size;
+		columns = (int) Math.ceil((maxX - minX) * invCellSize);
+		rows = (int) Math.ceil((maxY - minY) * invCellSize);
+
+		// A segment can only be the closest one for some point of a cell if it
+		// is at most one cell diagonal further from the center than the
+		// closest segment to the center.
+		int cellCount = columns * rows;
+		float diagonal = cellSize * (float) Math.sqrt(2);
+		float[] distances = new float[segmentCount];
+		int[][] candidates = new int[cellCount][];
+		int total = 0;
+		int[] found = new int[segmentCount];
+		for (int cell = 0; cell < cellCount; cell++) {
+			float cx = minX + (cell % columns + 0.5f) * cellSize;
+			float cy = minY + (cell / columns + 0.5f) * cellSize;
+			float closest = Float.MAX_VALUE;
+			for (int s = 0; s < segmentCount; s++) {
+				distances[s] = (float) Math.sqrt(distanceSquared(s, cx, cy));
+				closest = Math.min(closest, distances[s]);
+			}
+			int count = 0;
+			for (int s = 0; s < segmentCount; s++) {
+				if (distances[s] <= closest + diagonal) {
+					found[count++] = s;
+				}
+			}
+			candidates[cell] = Arrays.copyOf(found, count);
+			total += count;
+		}
+		cellStart = new int[cellCount + 1];
+		cellSegments = new int[total];
+		for (int cell = 0; cell < cellCount; cell++) {
+			System.arraycopy(candidates[cell], 0, cellSegments, cellStart[cell], candidates[cell].length);
+			cellStart[cell + 1] = cellStart[cell] + candidates[cell].length;
+		}
+	}
+
+	/**
+	 * Position of the projection of (x, y) on segment s, from 0 at its start
+	 * point to 1 at its end point.
+	 */
+	public float project(int s, float x, float y) {
+		float lengthSquared = lengths[s] * lengths[s];
+		if (lengthSquared == 0) {
+			return 0;
+		}
+		float t = ((x - ax[s]) * ex[s] + (y - ay[s]) * ey[s]) / lengthSquared;
+		return Math.max(0, Math.min(1, t));
+	}
+
+	private float distanceSquared(int s, float x, float y) {
+		float t = project(s, x, y);
+		float dx = x - (ax[s] + t * ex[s]);
+		float dy = y - (ay[s] + t * ey[s]);
+		return dx * dx + dy * dy;
+	}
+
+	/**
+	 * The segment closest to (x, y). Segment i runs from track point i to
+	 * track point i + 1. Positions beyond the walls are clamped to the border
+	 * cells and only get an approximate answer.
+	 */
+	public int segmentAt(float x, float y) {
+		int column = Math.min(columns - 1, Math.max(0, (int) ((x - minX) * invCellSize)));
+		int row = Math.min(rows - 1, Math.max(0, (int) ((y - minY) * invCellSize)));
+		int cell = row * columns + column;
+		int best = cellSegments[cellStart[cell]];
+		float bestDistance = Float.MAX_VALUE;
+		for (int k = cellStart[cell], end = cellStart[cell + 1]; k < end; k++) {
+			int s = cellSegments[k];
+			float d = distanceSquared(s, x, y);
+			if (d < bestDistance) {
+				bestDistance = d;
+				best = s;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Lap progress of (x, y) between 0 at the first track point and 1 after a
+	 * full lap. Like SegmentTracker every segment counts the same, not by its
+	 * length.
+	 */
+	public float progressAt(float x, float y) {
+		int s = segmentAt(x, y);
+		return (s + project(s, x, y)) / segmentCount;
+	}
+
+	public float getLength() {
+		return totalLength;
+	}
+
+	public float getCumulativeLength(int segment) {
+		return cumulative[segment];
+	}
+}
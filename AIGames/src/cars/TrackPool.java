@@ -0,0 +1,96 @@
+package cars;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import vector.Vector2f;
+
+/**
+ * Process wide cache of compiled tracks by file. Every track file is read and
+ * compiled once, all simulations on it share the result.
+ */
+public class TrackPool {
+	public final static String defaultTrack = "res/tracks/Circle" + TrackFile.extension;
+
+	static final Map<String, Track> tracks = new HashMap<String, Track>();
+	static Track builtin;
+
+	public static synchronized Track get(String path) throws IOException {
+		String key = new File(path).getCanonicalPath();
+		Track track = tracks.get(key);
+		if (track == null) {
+			track = TrackFile.read(new File(path));
+			tracks.put(key, track);
+		}
+		return track;
+	}
+
+	/**
+	 * The default track file, or the same circle built in if it can't be read,
+	 * e.g. when started from another working directory.
+	 */
+	public static synchronized Track getDefault() {
+		try {
+			return get(defaultTrack);
+		} catch (IOException e) {
+			if (builtin == null) {
+				System.out.println("Couldn't read " + defaultTrack + ": " + e.getMessage() + " Using built in track.");
+				builtin = new Track("Circle", new Vector2f[] { new Vector2f(950, 200), new Vector2f(1500, 500),
+						new Vector2f(950, 900), new Vector2f(400, 500) }, new float[] { 180, 250, 180, 250 });
+			}
+			return builtin;
+		}
+	}
+
+	/**
+	 * All track files in directory, sorted by name.
+	 */
+	public static Track[] getAll(String directory) throws IOException {
+		File[] files = new File(directory).listFiles();
+		if (files == null) {
+			throw new IOException(directory + " is no directory");
+		}
+		Arrays.sort(files);
+		List<Track> result = new ArrayList<Track>();
+		for (File f : files) {
+			if (f.getName().endsWith(TrackFile.extension)) {
+				result.add(get(f.getPath()));
+			}
+		}
+		return result.toArray(new Track[result.size()]);
+	}
+
+	/**
+	 * The tracks named by the system property cars.tracks, a directory or a
+	 * comma separated list of track files. Just the default track if it is
+	 * not set or can't be read.
+	 */
+	public static Track[] fromProperties() {
+		String value = System.getProperty("cars.tracks");
+		if (value != null) {
+			try {
+				if (new File(value).isDirectory()) {
+					Track[] all = getAll(value);
+					if (all.length > 0) {
+						return all;
+					}
+				} else {
+					String[] paths = value.split(",");
+					Track[] result = new Track[paths.length];
+					for (int i = 0; i < paths.length; i++) {
+						result[i] = get(paths[i].trim());
+					}
+					return result;
+				}
+			} catch (IOException e) {
+				System.out.println("Couldn't read tracks " + value + ": " + e.getMessage());
+			}
+		}
+		return new Track[] { getDefault() };
+	}
+}
@@ -0,0 +1,267 @@
+package cars;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Typed training events of one simulation in a ring of primitive slots. The
+ * simulation thread only checks level and rate limit, copies a few floats and
+ * publishes the slot. A shared background thread drains all logs, appends the
+ * events to a compact binary file if one is set and prints the ones at or
+ * above the console level. Events are dropped, and counted, when the ring is
+ * full or their type is over its rate limit.
+ *
+ * main prints a log file as text.
+ */
+public class TrainingLog {
+	public final static int debug = 0, info = 1, warn = 2, off = 3;
+
+	public final static int splitWon = 0, learnedNothing = 1, rayMiss = 2, rayOverlap = 3, generation = 4;
+	final static String[] typeNames = { "splitWon", "learnedNothing", "rayMiss", "rayOverlap", "generation" };
+	final static int[] typeLevels = { info, info, warn, debug, info };
+	final static int[] typeFields = { 8, 3, 7, 3, 3 };
+	final static int maxFields = 8;
+	final static int fileMagic = 0x41494c47; // "AILG"
+	final static long drainIntervalMillis = 20;
+
+	final String name;
+	final int mask;
+	final long[] times;
+	final int[] types;
+	final float[] values;
+	final AtomicLong head = new AtomicLong(), tail = new AtomicLong();
+	volatile int minLevel = info;
+	volatile int consoleLevel = info;
+	final long startTime = System.nanoTime();
+
+	final int[] maxPerSecond = new int[typeNames.length];
+	final long[] windowStart = new long[typeNames.length];
+	final int[] windowCount = new int[typeNames.length];
+	volatile long dropped, limited;
+	long reportedDropped, reportedLimited;
+
+	DataOutputStream file;
+
+	static final CopyOnWriteArrayList<TrainingLog> logs = new CopyOnWriteArrayList<TrainingLog>();
+	static Thread drainer;
+
+	public TrainingLog(String name, int capacity) {
+		this.name = name;
+		int size = 1;
+		while (size < capacity) {
+			size <<= 1;
+		}
+		mask = size - 1;
+		times = new long[size];
+		types = new int[size];
+		values = new float[size * maxFields];
+		for (int t = 0; t < maxPerSecond.length; t++) {
+			maxPerSecond[t] = 20;
+		}
+		logs.add(this);
+		startDrainer();
+	}
+
+	private static synchronized void startDrainer() {
+		if (drainer != null) {
+			return;
+		}
+		drainer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				while (true) {
+					for (TrainingLog log : logs) {
+						log.drain();
+					}
+					try {
+						Thread.sleep(drainIntervalMillis);
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+			}
+		}, "TrainingLogDrainer");
+		drainer.setDaemon(true);
+		drainer.start();
+	}
+
+	/**
+	 * Events below level are dropped right away.
+	 */
+	public void setLevel(int level) {
+		minLevel = level;
+	}
+
+	public void setConsoleLevel(int level) {
+		consoleLevel = level;
+	}
+
+	public void setRateLimit(int type, int perSecond) {
+		maxPerSecond[type] = perSecond;
+	}
+
+	/**
+	 * Appends all events from now on to file.
+	 */
+	public synchronized void setFile(File f) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f)));
+		out.writeInt(fileMagic);
+		out.writeUTF(name);
+		file = out;
+	}
+
+	public boolean isEnabled(int type) {
+		return typeLevels[type] >= minLevel;
+	}
+
+	public void log(int type, float a, float b, float c) {
+		log(type, a, b, c, 0, 0, 0, 0, 0);
+	}
+
+	public void log(int type, float a, float b, float c, float d, float e, float f, float g, float h) {
+		if (typeLevels[type] < minLevel) {
+			return;
+		}
+		long now = System.nanoTime();
+		if (now - windowStart[type] >= 1000000000L) {
+			windowStart[type] = now;
+			windowCount[type] = 0;
+		}
+		if (windowCount[type] >= maxPerSecond[type]) {
+			limited++;
+			return;
+		}
+		windowCount[type]++;
+		long t = tail.get();
+		if (t - head.get() > mask) {
+			dropped++;
+			return;
+		}
+		int slot = (int) t & mask;
+		times[slot] = now;
+		types[slot] = type;
+		int v = slot * maxFields;
+		values[v] = a;
+		values[v + 1] = b;
+		values[v + 2] = c;
+		values[v + 3] = d;
+		values[v + 4] = e;
+		values[v + 5] = f;
+		values[v + 6] = g;
+		values[v + 7] = h;
+		tail.lazySet(t + 1);
+	}
+
+	synchronized void drain() {
+		long h = head.get();
+		long t = tail.get();
+		try {
+			for (; h < t; h++) {
+				int slot = (int) h & mask;
+				int type = types[slot];
+				long millis = (times[slot] - startTime) / 1000000;
+				if (file != null) {
+					file.writeByte(type);
+					file.writeInt((int) millis);
+					for (int i = 0; i < typeFields[type]; i++) {
+						file.writeFloat(values[slot * maxFields + i]);
+					}
+				}
+				if (typeLevels[type] >= consoleLevel) {
+					System.out.println(format(type, values, slot * maxFields));
+				}
+			}
+			head.lazySet(h);
+			long d = dropped, l = limited;
+			if (d != reportedDropped || l != reportedLimited) {
+				if (consoleLevel < off) {
+					System.out.println(name + ": " + (d - reportedDropped) + " log events dropped, "
+							+ (l - reportedLimited) + " rate limited");
+				}
+				reportedDropped = d;
+				reportedLimited = l;
+			}
+			if (file != null) {
+				file.flush();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			file = null;
+		}
+	}
+
+	/**
+	 * Drains what is left, closes the file and stops draining this log.
+	 */
+	public synchronized void close() {
+		logs.remove(this);
+		drain();
+		if (file != null) {
+			try {
+				file.close();
+			} catch (IOException e) {
+			}
+			file = null;
+		}
+	}
+
+	static String format(int type, float[] v, int o) {
+		switch (type) {
+		case splitWon:
+			return "Split won: progress " + v[o] + " -> " + v[o + 1] + ", lap " + (v[o + 2] != 0) + " -> "
+					+ (v[o + 3] != 0) + ", expected " + v[o + 4] + "; " + v[o + 5] + "; " + v[o + 6] + "; "
+					+ v[o + 7];
+		case learnedNothing:
+			return "Learned nothing, change position! Track point " + (int) v[o] + " (" + v[o + 1] + ", " + v[o + 2]
+					+ ")";
+		case rayMiss:
+			return "Raycast Error! " + (int) v[o + 6] + "; ray " + (int) v[o] + " at (" + v[o + 1] + ", " + v[o + 2]
+					+ ") direction (" + v[o + 3] + ", " + v[o + 4] + "), " + (int) v[o + 5] + " overlaps";
+		case rayOverlap:
+			return "RC Overlap " + (int) v[o] + "; (" + v[o + 1] + ", " + v[o + 2] + ")";
+		case generation:
+			return "Generation " + (long) v[o] + ": best " + v[o + 1] + ", " + v[o + 2] + " generations/min";
+		default:
+			return "Unknown event " + type;
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.out.println("Usage: TrainingLog <log file>");
+			return;
+		}
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(args[0])));
+		try {
+			if (in.readInt() != fileMagic) {
+				throw new IOException(args[0] + " is no training log");
+			}
+			System.out.println("Log of " + in.readUTF());
+			float[] v = new float[maxFields];
+			while (true) {
+				int type;
+				try {
+					type = in.readUnsignedByte();
+				} catch (EOFException e) {
+					break;
+				}
+				int millis = in.readInt();
+				for (int i = 0; i < typeFields[type]; i++) {
+					v[i] = in.readFloat();
+				}
+				System.out.println(millis + " ms " + typeNames[type] + ": " + format(type, v, 0));
+			}
+		} finally {
+			in.close();
+		}
+	}
+}
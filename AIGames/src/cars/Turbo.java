@@ -0,0 +1,71 @@
+package cars;
+
+/**
+ * Number of fixed simulation ticks per rendered frame. Off runs one tick,
+ * the fixed settings run that many ticks unless the frame gets too long, and
+ * adaptive runs ticks until a time budget is used up. The budget shrinks when
+ * frames come in late, e.g. because the machine is loaded, and grows back
+ * slowly while they are on time. Only the state after the last tick is
+ * rendered.
+ */
+public class Turbo {
+	final static int adaptive = 0;
+	final static int[] settings = { 1, 4, 16, 64, adaptive };
+	final long frameNanos = 16000000;
+	final long minBudgetNanos = 1000000;
+	final long maxBudgetNanos = 14000000;
+	final long maxFrameNanos = 50000000;
+	int setting = 0;
+	long budgetNanos = maxBudgetNanos;
+	int lastTicks = 0;
+
+	public void next() {
+		setting = (setting + 1) % settings.length;
+		budgetNanos = maxBudgetNanos;
+	}
+
+	public boolean isOn() {
+		return settings[setting] != 1;
+	}
+
+	/**
+	 * Runs the ticks for one frame that took frameMillis since the last one.
+	 * Stops early when the simulation halts. Returns the number of ticks.
+	 */
+	public int run(Simulation sim, int frameMillis) {
+		int ticks = settings[setting];
+		if (ticks == 1) {
+			sim.update(Simulation.tickLength);
+			lastTicks = 1;
+			return 1;
+		}
+		if (ticks == adaptive) {
+			if (frameMillis * 1000000L > frameNanos + frameNanos / 4) {
+				budgetNanos = Math.max(budgetNanos * 3 / 4, minBudgetNanos);
+			} else {
+				budgetNanos = Math.min(budgetNanos + frameNanos / 32, maxBudgetNanos);
+			}
+		}
+		long start = System.nanoTime();
+		long limit = ticks == adaptive ? budgetNanos : maxFrameNanos;
+		int done = 0;
+		do {
+			sim.update(Simulation.tickLength);
+			done++;
+		} while (!sim.errorstop && (ticks == adaptive || done < ticks) && System.nanoTime() - start < limit);
+		lastTicks = done;
+		return done;
+	}
+
+	public int getLastTicks() {
+		return lastTicks;
+	}
+
+	public String describe() {
+		int ticks = settings[setting];
+		if (ticks == adaptive) {
+			return "Turbo: adaptive";
+		}
+		return ticks == 1 ? "Turbo: off" : "Turbo: " + ticks + " ticks/frame";
+	}
+}
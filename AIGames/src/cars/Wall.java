@@ -13,9 +13,17 @@ import vector.Vector2f;
 
 public class Wall extends ShapedObject2 {
 	private Vector2f localA, localB, localC, localD;
+	Vector2f[] corners;
 	RigidBody2 body;
+	// Where the support calculator takes its result vectors from
+	SupportResults supportResults = new SupportResults();
 
 	public Wall(Vector2f a, Vector2f b, Vector2f c, Vector2f d) {
+		this(a, b, c, d, true);
+	}
+
+	public Wall(Vector2f a, Vector2f b, Vector2f c, Vector2f d, boolean render) {
+		corners = new Vector2f[] { new Vector2f(a), new Vector2f(b), new Vector2f(c), new Vector2f(d) };
 		Vector2f ACcenter = VecMath.subtraction(c, a);
 		ACcenter.scale(0.5f);
 		ACcenter.translate(a);
@@ -41,7 +49,9 @@ public class Wall extends ShapedObject2 {
 		addVertex(localD);
 		setRenderMode(GLConstants.TRIANGLE_ADJACENCY);
 		addQuad(0, 0, 1, 1, 2, 2, 3, 3);
-		this.prerender();
+		if (render) {
+			this.prerender();
+		}
 
 		float minX = Math.min(localA.x, Math.min(localB.x, Math.min(localC.x, localD.x)));
 		float minY = Math.min(localA.y, Math.min(localB.y, Math.min(localC.y, localD.y)));
@@ -54,6 +64,13 @@ public class Wall extends ShapedObject2 {
 		return body;
 	}
 
+	/**
+	 * World space corners in outline order.
+	 */
+	public Vector2f[] getCorners() {
+		return corners;
+	}
+
 	private class WallShape extends CollisionShape2 {
 		WallShape(float x, float y, float minX, float minY, float maxX, float maxY) {
 			super();
@@ -68,71 +85,47 @@ public class Wall extends ShapedObject2 {
 		}
 	}
 
+	/**
+	 * Hands out the support points of this wall from a SupportResults ring.
+	 */
 	private class WallSupport implements SupportCalculator<Vector2f> {
-		@Override
-		public Vector2f supportPointLocal(Vector2f direction) {
-			Vector2f v;
-			float dA = VecMath.dotproduct(direction, localA);
-			float dB = VecMath.dotproduct(direction, localB);
+		private Vector2f corner(float x, float y) {
+			float dA = x * localA.x + y * localA.y;
+			float dB = x * localB.x + y * localB.y;
 			if (dA >= dB) {
-				float dD = VecMath.dotproduct(direction, localD);
+				float dD = x * localD.x + y * localD.y;
 				if (dA >= dD) {
-					v = new Vector2f(localA);
-				} else {
-					float dC = VecMath.dotproduct(direction, localC);
-					if (dD >= dC) {
-						v = new Vector2f(localD);
-					} else {
-						v = new Vector2f(localC);
-					}
-				}
-			} else {
-				float dC = VecMath.dotproduct(direction, localC);
-				if (dB >= dC) {
-					v = new Vector2f(localB);
-				} else {
-					float dD = VecMath.dotproduct(direction, localD);
-					if (dC >= dD) {
-						v = new Vector2f(localC);
-					} else {
-						v = new Vector2f(localD);
-					}
+					return localA;
 				}
+				float dC = x * localC.x + y * localC.y;
+				return dD >= dC ? localD : localC;
 			}
-			return v;
+			float dC = x * localC.x + y * localC.y;
+			if (dB >= dC) {
+				return localB;
+			}
+			float dD = x * localD.x + y * localD.y;
+			return dC >= dD ? localC : localD;
+		}
+
+		public Vector2f supportPointLocal(Vector2f direction, Vector2f result) {
+			result.set(corner(direction.x, direction.y));
+			return result;
+		}
+
+		public Vector2f supportPointLocalNegative(Vector2f direction, Vector2f result) {
+			result.set(corner(-direction.x, -direction.y));
+			return result;
+		}
+
+		@Override
+		public Vector2f supportPointLocal(Vector2f direction) {
+			return supportPointLocal(direction, supportResults.next());
 		}
 
 		@Override
 		public Vector2f supportPointLocalNegative(Vector2f direction) {
-			Vector2f v;
-			float dA = VecMath.dotproduct(direction, localA);
-			float dB = VecMath.dotproduct(direction, localB);
-			if (dA < dB) {
-				float dD = VecMath.dotproduct(direction, localD);
-				if (dA < dD) {
-					v = new Vector2f(localA);
-				} else {
-					float dC = VecMath.dotproduct(direction, localC);
-					if (dD < dC) {
-						v = new Vector2f(localD);
-					} else {
-						v = new Vector2f(localC);
-					}
-				}
-			} else {
-				float dC = VecMath.dotproduct(direction, localC);
-				if (dB < dC) {
-					v = new Vector2f(localB);
-				} else {
-					float dD = VecMath.dotproduct(direction, localD);
-					if (dC < dD) {
-						v = new Vector2f(localC);
-					} else {
-						v = new Vector2f(localD);
-					}
-				}
-			}
-			return v;
+			return supportPointLocalNegative(direction, supportResults.next());
 		}
 
 		@Override
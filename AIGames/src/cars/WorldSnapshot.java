@@ -0,0 +1,209 @@
+package cars;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import objects.RigidBody2;
+import quaternion.Complexf;
+import vector.Vector1f;
+import vector.Vector2f;
+
+/**
+ * Dynamic state of a set of cars and their segment trackers. All storage is
+ * allocated up front, capture and restore only copy values.
+ */
+public class WorldSnapshot {
+	final CarState[] states;
+	int size = 0;
+
+	public WorldSnapshot(int capacity) {
+		states = new CarState[capacity];
+		for (int i = 0; i < capacity; i++) {
+			states[i] = new CarState();
+		}
+	}
+
+	public void capture(Car car, SegmentTracker tracker) {
+		states[0].capture(car, tracker);
+		size = 1;
+	}
+
+	public void restore(Car car, SegmentTracker tracker) {
+		states[0].restore(car, tracker);
+	}
+
+	public void capture(Car[] cars, SegmentTracker[] trackers, int count) {
+		for (int i = 0; i < count; i++) {
+			states[i].capture(cars[i], trackers[i]);
+		}
+		size = count;
+	}
+
+	public void restore(Car[] cars, SegmentTracker[] trackers) {
+		for (int i = 0; i < size; i++) {
+			states[i].restore(cars[i], trackers[i]);
+		}
+	}
+
+	/**
+	 * Restores the state captured for car index into car and tracker.
+	 */
+	public void restore(int index, Car car, SegmentTracker tracker) {
+		states[index].restore(car, tracker);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Copies the captured states of other, which must not hold more than
+	 * the capacity of this snapshot.
+	 */
+	public void set(WorldSnapshot other) {
+		for (int i = 0; i < other.size; i++) {
+			states[i].set(other.states[i]);
+		}
+		size = other.size;
+	}
+
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(size);
+		for (int i = 0; i < size; i++) {
+			states[i].write(out);
+		}
+	}
+
+	/**
+	 * Reads a snapshot written by write, at most capacity cars.
+	 */
+	public void read(DataInput in) throws IOException {
+		int count = in.readInt();
+		if (count < 0 || count > states.length) {
+			throw new IOException("Snapshot of " + count + " cars, room for " + states.length);
+		}
+		for (int i = 0; i < count; i++) {
+			states[i].read(in);
+		}
+		size = count;
+	}
+
+	static class CarState {
+		final Vector2f position = new Vector2f();
+		final Complexf rotation = new Complexf();
+		final Vector2f velocity = new Vector2f();
+		final Vector1f angularVelocity = new Vector1f();
+		final Vector2f forceAccumulator = new Vector2f();
+		final Vector1f torqueAccumulator = new Vector1f();
+		float linearDamping;
+
+		final Vector2f lastTP = new Vector2f(), nextTP = new Vector2f();
+		final Vector2f trackDir = new Vector2f();
+		int currentSegment;
+		boolean forward, nextLap;
+		float progress;
+
+		void capture(Car car, SegmentTracker tracker) {
+			RigidBody2 body = car.getBody();
+			position.set(car.getTranslation());
+			rotation.set(car.getRotation());
+			velocity.set(body.getLinearVelocity());
+			angularVelocity.set(body.getAngularVelocity());
+			forceAccumulator.set(body.getForceAccumulator());
+			torqueAccumulator.set(body.getTorqueAccumulator());
+			linearDamping = car.lineardamping;
+
+			lastTP.set(tracker.lastTP);
+			nextTP.set(tracker.nextTP);
+			trackDir.set(tracker.trackDir);
+			currentSegment = tracker.currentSegment;
+			forward = tracker.forward;
+			nextLap = tracker.nextLap;
+			progress = tracker.progress;
+		}
+
+		void restore(Car car, SegmentTracker tracker) {
+			RigidBody2 body = car.getBody();
+			car.getTranslation().set(position);
+			car.getRotation().set(rotation);
+			body.getLinearVelocity().set(velocity);
+			body.getAngularVelocity().set(angularVelocity);
+			body.getForceAccumulator().set(forceAccumulator);
+			body.getTorqueAccumulator().set(torqueAccumulator);
+			car.setLinearDamping(linearDamping);
+			// The pose was written directly, bring the derived rotation and bounds up to date
+			body.updateInverseRotation();
+			body.updateAABB();
+
+			tracker.lastTP.set(lastTP);
+			tracker.nextTP.set(nextTP);
+			tracker.trackDir.set(trackDir);
+			tracker.currentSegment = currentSegment;
+			tracker.forward = forward;
+			tracker.nextLap = nextLap;
+			tracker.progress = progress;
+		}
+
+		void set(CarState other) {
+			position.set(other.position);
+			rotation.set(other.rotation);
+			velocity.set(other.velocity);
+			angularVelocity.set(other.angularVelocity);
+			forceAccumulator.set(other.forceAccumulator);
+			torqueAccumulator.set(other.torqueAccumulator);
+			linearDamping = other.linearDamping;
+
+			lastTP.set(other.lastTP);
+			nextTP.set(other.nextTP);
+			trackDir.set(other.trackDir);
+			currentSegment = other.currentSegment;
+			forward = other.forward;
+			nextLap = other.nextLap;
+			progress = other.progress;
+		}
+
+		void write(DataOutput out) throws IOException {
+			out.writeFloat(position.x);
+			out.writeFloat(position.y);
+			out.writeFloat(rotation.getRealf());
+			out.writeFloat(rotation.getImaginaryf());
+			out.writeFloat(velocity.x);
+			out.writeFloat(velocity.y);
+			out.writeFloat(angularVelocity.x);
+			out.writeFloat(forceAccumulator.x);
+			out.writeFloat(forceAccumulator.y);
+			out.writeFloat(torqueAccumulator.x);
+			out.writeFloat(linearDamping);
+
+			out.writeFloat(lastTP.x);
+			out.writeFloat(lastTP.y);
+			out.writeFloat(nextTP.x);
+			out.writeFloat(nextTP.y);
+			out.writeFloat(trackDir.x);
+			out.writeFloat(trackDir.y);
+			out.writeInt(currentSegment);
+			out.writeBoolean(forward);
+			out.writeBoolean(nextLap);
+			out.writeFloat(progress);
+		}
+
+		void read(DataInput in) throws IOException {
+			position.set(in.readFloat(), in.readFloat());
+			rotation.set(in.readFloat(), in.readFloat());
+			velocity.set(in.readFloat(), in.readFloat());
+			angularVelocity.set(in.readFloat());
+			forceAccumulator.set(in.readFloat(), in.readFloat());
+			torqueAccumulator.set(in.readFloat());
+			linearDamping = in.readFloat();
+
+			lastTP.set(in.readFloat(), in.readFloat());
+			nextTP.set(in.readFloat(), in.readFloat());
+			trackDir.set(in.readFloat(), in.readFloat());
+			currentSegment = in.readInt();
+			forward = in.readBoolean();
+			nextLap = in.readBoolean();
+			progress = in.readFloat();
+		}
+	}
+}